@@ -0,0 +1,21 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import java.util.Arrays;
+
+public class BenchmarkMain {
+    // This class is the entry point of target/benchmarks.jar; it runs JMH with the gc profiler unless other profilers
+    // are given, so every run also reports the allocation rate (gc.alloc.rate.norm is the bytes allocated per operation)
+    // Example: java -jar target/benchmarks.jar FilterRunnerBenchmark -rf json -rff target/jmh-result.json
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (!Arrays.asList(args).contains("-prof")) {
+            args = Arrays.copyOf(args, args.length + 2);
+            args[args.length - 2] = "-prof";
+            args[args.length - 1] = "gc";
+        }
+        org.openjdk.jmh.Main.main(args);
+    }
+}
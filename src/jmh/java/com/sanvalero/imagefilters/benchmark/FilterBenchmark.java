@@ -0,0 +1,74 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+import com.sanvalero.imagefilters.filter.FilterFactory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBenchmark {
+    // This class measures Filter.apply of every filter on a span of one megapixel, in both pixel layouts
+    // The pixels are restored before every call, so brightness does not saturate and invert does not undo itself
+    private static final int PIXELS = 1_000_000;
+
+    @Param({"Grayscale", "Invert Colors", "Brightness(20)"})
+    private String filterName;
+
+    private Filter filter;
+    private int[] argbSource;
+    private int[] argbPixels;
+    private byte[] bgrSource;
+    private byte[] bgrPixels;
+
+    @Setup(Level.Trial)
+    public void createPixels() {
+        filter = FilterFactory.create(FilterDescriptor.parse(filterName));
+        Random random = new Random(42);
+        argbSource = new int[PIXELS];
+        for (int i = 0; i < PIXELS; i++) {
+            argbSource[i] = random.nextInt() | 0xFF000000;
+        }
+        bgrSource = new byte[PIXELS * 3];
+        random.nextBytes(bgrSource);
+        argbPixels = new int[PIXELS];
+        bgrPixels = new byte[PIXELS * 3];
+    }
+
+    @Setup(Level.Invocation)
+    public void restorePixels() {
+        System.arraycopy(argbSource, 0, argbPixels, 0, PIXELS);
+        System.arraycopy(bgrSource, 0, bgrPixels, 0, PIXELS * 3);
+    }
+
+    @Benchmark
+    public int[] applyArgb() {
+        filter.apply(argbPixels, 0, PIXELS);
+        return argbPixels;
+    }
+
+    @Benchmark
+    public byte[] applyBgr() {
+        filter.apply(bgrPixels, 0, PIXELS);
+        return bgrPixels;
+    }
+}
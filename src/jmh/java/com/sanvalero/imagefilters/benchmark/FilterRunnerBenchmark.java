@@ -0,0 +1,83 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterFactory;
+import com.sanvalero.imagefilters.task.FilterRunner;
+import com.sanvalero.imagefilters.task.FilterTask;
+import com.sanvalero.imagefilters.task.FrameBufferPool;
+import com.sanvalero.imagefilters.task.ProgressReporter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class FilterRunnerBenchmark {
+    // This class measures a whole filter run, like the one of FilterTask, on images of every supported type
+    // FilterTask publishes its progress through the JavaFX toolkit, so the benchmark runs the FilterRunner it delegates
+    // to, with the same parallel threshold and a progress reporter; the result goes back to the pool as in the tabs
+    private static final List<Filter> FILTERS = FilterFactory.parseChain("Grayscale,Brightness(20),Invert Colors");
+
+    @Param({"1", "12", "48"})
+    private int megapixels;
+
+    @Param({"TYPE_INT_ARGB", "TYPE_INT_RGB", "TYPE_3BYTE_BGR", "TYPE_BYTE_GRAY"})
+    private String imageType;
+
+    private BufferedImage image;
+    private ProgressReporter progressReporter;
+
+    @Setup(Level.Trial)
+    public void createImage() throws ReflectiveOperationException {
+        // 4:3 images, like most camera sensors
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4.0 / 3.0));
+        int height = megapixels * 1_000_000 / width;
+        image = new BufferedImage(width, height, BufferedImage.class.getField(imageType).getInt(null));
+        Random random = new Random(42);
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = random.nextInt() | 0xFF000000;
+            }
+        } else {
+            random.nextBytes(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        }
+        progressReporter = new ProgressReporter((done, total, percent) -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void clearPool() {
+        FrameBufferPool.IMAGES.clear();
+    }
+
+    @Benchmark
+    public BufferedImage filterImage() throws InterruptedException {
+        FilterRunner runner = new FilterRunner(image, FILTERS, FilterTask.DEFAULT_PARALLEL_THRESHOLD, null);
+        runner.setProgressReporter(progressReporter);
+        BufferedImage filteredImage = runner.run();
+        FrameBufferPool.IMAGES.release(filteredImage);
+        return filteredImage;
+    }
+}
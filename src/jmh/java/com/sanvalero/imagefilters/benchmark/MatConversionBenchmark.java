@@ -0,0 +1,79 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import com.sanvalero.imagefilters.controller.VideoTabController;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatConversionBenchmark {
+    // This class measures the conversions of video frames between OpenCV Mats and BufferedImages
+    // The OpenCV native library is loaded from -Dimagefilters.opencv.lib=<file>, passed with -jvmArgsAppend, or else
+    // from java.library.path
+    @Param({"640x360", "1920x1080", "3840x2160"})
+    private String frameSize;
+
+    private Mat mat;
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void createFrames() {
+        String library = System.getProperty("imagefilters.opencv.lib");
+        if (library != null) {
+            System.load(library);
+        } else {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        }
+        String[] size = frameSize.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        byte[] pixels = new byte[width * height * 3];
+        new Random(42).nextBytes(pixels);
+        mat = new Mat(height, width, CvType.CV_8UC3);
+        mat.put(0, 0, pixels);
+        image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        System.arraycopy(pixels, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void releaseFrames() {
+        mat.release();
+    }
+
+    @Benchmark
+    public BufferedImage matToBufferedImage() {
+        return VideoTabController.matToBufferedImage(mat);
+    }
+
+    @Benchmark
+    public void bufferedImageToMat(Blackhole blackhole) {
+        Mat converted = VideoTabController.bufferedImageToMat(image);
+        blackhole.consume(converted);
+        converted.release(); // The native memory is not counted by the gc profiler, so it is freed at once
+    }
+}
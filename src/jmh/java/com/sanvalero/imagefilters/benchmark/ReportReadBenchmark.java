@@ -0,0 +1,92 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import com.sanvalero.imagefilters.report.HistoryCursor;
+import com.sanvalero.imagefilters.report.HistoryPage;
+import com.sanvalero.imagefilters.report.HistoryQuery;
+import com.sanvalero.imagefilters.report.ReportManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ReportReadBenchmark {
+    // This class measures reading a history written once per trial: the first page of the History Report window, a
+    // search by folder and going through every entry page by page
+    private static final int PAGE_SIZE = 200;
+
+    @Param({"10000", "100000", "1000000"})
+    private int entries;
+
+    @Param({"TEXT", "BINARY"})
+    private String format;
+
+    private Path directory;
+    private ReportManager reportManager;
+    private HistoryQuery folderQuery;
+
+    @Setup(Level.Trial)
+    public void writeHistory() throws IOException, InterruptedException {
+        System.setProperty("imagefilters.history.format", format);
+        directory = Files.createTempDirectory("imagefilters-report-benchmark");
+        String[] paths = ReportWriteBenchmark.createPaths(entries);
+        reportManager = new ReportManager(new File(directory.toFile(), "history_report.log").getPath());
+        for (int i = 0; i < entries; i++) {
+            reportManager.writeFilterReportEntry(ReportWriteBenchmark.START.plusSeconds(i), paths[i], ReportWriteBenchmark.FILTERS);
+        }
+        reportManager.flush();
+        folderQuery = new HistoryQuery();
+        folderQuery.setPathPrefix("/home/user/photos/album42/");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws IOException, InterruptedException {
+        reportManager.close();
+        ReportWriteBenchmark.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public HistoryPage readLastPage() throws IOException, InterruptedException {
+        return reportManager.readLastEntries(PAGE_SIZE);
+    }
+
+    @Benchmark
+    public HistoryPage queryFolder() throws IOException, InterruptedException {
+        return reportManager.queryEntries(folderQuery, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public long readAllEntries() throws IOException, InterruptedException {
+        HistoryQuery query = new HistoryQuery();
+        HistoryCursor cursor = null;
+        HistoryPage page;
+        long read = 0;
+        do {
+            page = reportManager.queryEntries(query, cursor, 1000);
+            read += page.getEntries().size();
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+        return read;
+    }
+}
@@ -0,0 +1,97 @@
+package com.sanvalero.imagefilters.benchmark;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterFactory;
+import com.sanvalero.imagefilters.report.ReportManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class ReportWriteBenchmark {
+    // This class measures writing a whole history through ReportManager, from opening it until every entry is on disk
+    // The paths and timestamps are created beforehand, so only the allocations of the report are counted
+    static final List<Filter> FILTERS = FilterFactory.parseChain("Grayscale,Brightness(20),Invert Colors");
+    static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Param({"10000", "100000", "1000000"})
+    private int entries;
+
+    @Param({"TEXT", "BINARY"})
+    private String format;
+
+    private String[] paths;
+    private LocalDateTime[] timestamps;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void createEntries() {
+        System.setProperty("imagefilters.history.format", format);
+        paths = createPaths(entries);
+        timestamps = new LocalDateTime[entries];
+        for (int i = 0; i < entries; i++) {
+            timestamps[i] = START.plusSeconds(i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("imagefilters-report-benchmark");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteDirectory() throws IOException {
+        deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ReportManager writeEntries() throws InterruptedException {
+        ReportManager reportManager = new ReportManager(new File(directory.toFile(), "history_report.log").getPath());
+        for (int i = 0; i < entries; i++) {
+            reportManager.writeFilterReportEntry(timestamps[i], paths[i], FILTERS);
+        }
+        reportManager.close(); // Waits for the last entries to be written
+        return reportManager;
+    }
+
+    // Images spread over 100 folders, like a photo library
+    static String[] createPaths(int entries) {
+        String[] paths = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            paths[i] = "/home/user/photos/album" + (i % 100) + "/IMG_" + i + ".jpg";
+        }
+        return paths;
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
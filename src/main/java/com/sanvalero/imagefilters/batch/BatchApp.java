@@ -0,0 +1,68 @@
+package com.sanvalero.imagefilters.batch;
+
+import com.sanvalero.imagefilters.report.ReportManager;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BatchApp {
+    // This class is the entry point to filter images from the command line, without a display
+    // Example: java -cp <classpath> com.sanvalero.imagefilters.batch.BatchApp --input "photos/**/*.jpg"
+    //          --filters "Grayscale,Brightness(30)" --output filtered --parallelism 16
+    // The exit code is 0 if every image was filtered, 1 if some failed and 2 if the arguments are not valid
+
+    private BatchApp() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchOptions options;
+        try {
+            options = BatchOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(BatchOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        System.exit(run(options));
+    }
+
+    public static int run(BatchOptions options) {
+        ReportManager reportManager = null;
+        if (options.getReportFile() != null) {
+            File parent = new File(options.getReportFile()).getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            reportManager = new ReportManager(options.getReportFile());
+        }
+        System.out.println("Filtering " + options.getInput() + " with " + options.getFilterChain() + " into "
+                + options.getOutputDirectory() + " (threads: " + options.getDecodeThreads() + " decode, "
+                + options.getParallelism() + " filter, " + options.getEncodeThreads() + " encode)...");
+        BatchRunner runner = new BatchRunner(options, reportManager);
+        runner.setPrintProgress(true);
+        int exitCode;
+        try {
+            BatchStatistics statistics = runner.run();
+            exitCode = statistics.getFailures() > 0 ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("Batch stopped: " + e.getMessage());
+            exitCode = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Batch interrupted.");
+            exitCode = 1;
+        } finally {
+            if (reportManager != null) {
+                try {
+                    reportManager.close(); // Writes the entries still queued
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        System.out.println(runner.getStatistics().getSummary());
+        return exitCode;
+    }
+}
@@ -0,0 +1,83 @@
+package com.sanvalero.imagefilters.batch;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+public class BatchInput implements AutoCloseable {
+    // This class lists the images of a batch run lazily, so a folder of 200k files is never held in memory at once
+    // The input is a folder (its images, like File > Open images from folder), a single file or a glob such as
+    // photos/**/*.jpg, which is matched against the files under the part of the path before the first wildcard
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final Path base;
+    private final Stream<Path> files;
+
+    private BatchInput(Path base, Stream<Path> files) {
+        this.base = base;
+        this.files = files;
+    }
+
+    public static BatchInput open(String input) throws IOException {
+        int wildcard = indexOfWildcard(input);
+        if (wildcard < 0) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                Stream<Path> files = Files.list(path).filter(file -> Files.isRegularFile(file) && isImageFile(file));
+                return new BatchInput(path, files);
+            }
+            if (!Files.isRegularFile(path)) {
+                throw new IOException("Input not found: " + input);
+            }
+            Path parent = path.toAbsolutePath().getParent();
+            return new BatchInput(parent, Stream.of(path.toAbsolutePath()));
+        }
+        // The base folder is the part of the input before the separator that precedes the first wildcard
+        int separator = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf('\\', wildcard));
+        Path base = separator < 0 ? Paths.get("") : Paths.get(input.substring(0, separator + 1));
+        String pattern = input.substring(separator + 1).replace('\\', '/');
+        if (!Files.isDirectory(base.toAbsolutePath())) {
+            throw new IOException("Input folder not found: " + base.toAbsolutePath());
+        }
+        // Without ** the pattern can only match files at the depth of its number of folders
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        Path root = base.toAbsolutePath();
+        Stream<Path> files = Files.walk(root, depth)
+                .filter(file -> Files.isRegularFile(file) && matcher.matches(root.relativize(file)));
+        return new BatchInput(root, files);
+    }
+
+    // Path of the file relative to the input, used to place its output
+    public Path relativize(Path file) {
+        return base.toAbsolutePath().relativize(file.toAbsolutePath());
+    }
+
+    public Iterator<Path> iterator() {
+        return files.iterator();
+    }
+
+    @Override
+    public void close() {
+        files.close();
+    }
+
+    public static boolean isImageFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp");
+    }
+
+    private static int indexOfWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.sanvalero.imagefilters.batch;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterFactory;
+import com.sanvalero.imagefilters.service.ExecutionManager;
+
+import java.io.File;
+import java.util.List;
+
+public class BatchOptions {
+    // This class holds the command line options of a batch run
+    // The filter stage gets one thread per core and forks the bands of large images on the CPU pool, while reading and
+    // writing wait on the disk most of the time, so by default they get a few threads of their own that overlap with
+    // the filtering instead of competing with it for the cores; the busy time of every stage shows which one to widen
+    // The decode and encode threads can be set with -Dimagefilters.batch.ioThreads=<threads>
+    public static final int DEFAULT_IO_THREADS = Math.max(1, Integer.getInteger("imagefilters.batch.ioThreads", 2));
+
+    public static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: BatchApp --input <folder|glob> --filters <chain> --output <folder> [options]",
+            "  --input <folder|glob>   images of a folder, or the files matching a glob like photos/**/*.jpg",
+            "  --filters <chain>       filters in order, e.g. \"Grayscale,Brightness(30),Invert Colors\"",
+            "  --output <folder>       where the filtered images are written, keeping the folders of the input",
+            "  --parallelism <n>       images filtered at the same time (" + ExecutionManager.DEFAULT_PARALLELISM + ")",
+            "  --decode-threads <n>    images read at the same time (" + DEFAULT_IO_THREADS + ")",
+            "  --encode-threads <n>    images written at the same time (" + DEFAULT_IO_THREADS + ")",
+            "  --queue <n>             images waiting between two stages (twice the parallelism)",
+            "  --format <name>         image format of the output, e.g. png (by default the one of each input)",
+            "  --report <file>         history report to write (logs/history_report.log)",
+            "  --no-report             do not write the history report");
+
+    private String input;
+    private List<Filter> filters;
+    private String filterChain;
+    private File outputDirectory;
+    private int parallelism = ExecutionManager.DEFAULT_PARALLELISM;
+    private int decodeThreads = 0; // 0 to use DEFAULT_IO_THREADS
+    private int encodeThreads = 0;
+    private int queueCapacity = 0; // 0 for twice the parallelism
+    private String format; // Null to keep the format of every input file
+    private String reportFile = "logs/history_report.log"; // Null to not write the report
+
+    private BatchOptions() {
+    }
+
+    public BatchOptions(String input, List<Filter> filters, File outputDirectory, int parallelism) {
+        this.input = input;
+        this.filters = filters;
+        this.outputDirectory = outputDirectory;
+        this.parallelism = Math.max(1, parallelism);
+        StringBuilder chain = new StringBuilder();
+        for (Filter filter : filters) {
+            if (chain.length() > 0) {
+                chain.append(',');
+            }
+            chain.append(FilterFactory.describe(filter));
+        }
+        this.filterChain = chain.toString();
+    }
+
+    // Parse the arguments, throws IllegalArgumentException with the reason if they are not valid
+    public static BatchOptions parse(String[] args) {
+        BatchOptions options = new BatchOptions();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input":
+                    options.input = value(args, ++i);
+                    break;
+                case "--filters":
+                    options.filterChain = value(args, ++i);
+                    options.filters = FilterFactory.parseChain(options.filterChain);
+                    break;
+                case "--output":
+                    options.outputDirectory = new File(value(args, ++i));
+                    break;
+                case "--parallelism":
+                    options.parallelism = positive(args, ++i);
+                    break;
+                case "--decode-threads":
+                    options.decodeThreads = positive(args, ++i);
+                    break;
+                case "--encode-threads":
+                    options.encodeThreads = positive(args, ++i);
+                    break;
+                case "--queue":
+                    options.queueCapacity = positive(args, ++i);
+                    break;
+                case "--format":
+                    options.format = value(args, ++i).toLowerCase();
+                    break;
+                case "--report":
+                    options.reportFile = value(args, ++i);
+                    break;
+                case "--no-report":
+                    options.reportFile = null;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (options.input == null || options.filters == null || options.outputDirectory == null) {
+            throw new IllegalArgumentException("--input, --filters and --output are required.");
+        }
+        if (options.filters.isEmpty()) {
+            throw new IllegalArgumentException("No filters in: " + options.filterChain);
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static int positive(String[] args, int index) {
+        String text = value(args, index);
+        try {
+            int number = Integer.parseInt(text);
+            if (number >= 1) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + args[index - 1] + ": " + text);
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    public String getFilterChain() {
+        return filterChain;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads > 0 ? decodeThreads : DEFAULT_IO_THREADS;
+    }
+
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = decodeThreads;
+    }
+
+    public int getEncodeThreads() {
+        return encodeThreads > 0 ? encodeThreads : DEFAULT_IO_THREADS;
+    }
+
+    public void setEncodeThreads(int encodeThreads) {
+        this.encodeThreads = encodeThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity > 0 ? queueCapacity : 2 * parallelism;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+}
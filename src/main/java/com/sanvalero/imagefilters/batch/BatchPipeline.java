@@ -0,0 +1,251 @@
+package com.sanvalero.imagefilters.batch;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.report.ReportManager;
+import com.sanvalero.imagefilters.task.FilterRunner;
+import com.sanvalero.imagefilters.task.FilterTask;
+import com.sanvalero.imagefilters.task.FrameBufferPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.LongConsumer;
+
+import javax.imageio.ImageIO;
+
+public class BatchPipeline {
+    // This class filters the images of a batch in three stages connected by bounded queues:
+    // decode (ImageIO read) -> filter (FilterRunner) -> encode (ImageIO write, history report)
+    // Every stage has its own threads, so reading and writing files overlaps with filtering and a run takes about as
+    // long as its slowest stage. A full queue makes the stage before it wait, so the images held in memory are bounded
+    // by the threads and queue capacities, whatever the number of files
+    private static final Logger logger = LoggerFactory.getLogger(BatchPipeline.class);
+
+    private static final Item END = new Item(null, null); // Marks the end of the input of a stage
+
+    // Listener called on an encode thread once every image is written or has failed (error not null)
+    public interface ImageListener {
+        void onImageDone(Path file, Path target, Exception error);
+    }
+
+    // An image moving through the stages
+    private static class Item {
+        private final Path file;
+        private final Path target;
+        private BufferedImage image;
+        private boolean filtered = false; // The image is the filtered one, leased from FrameBufferPool.IMAGES
+        private long pixels;
+
+        Item(Path file, Path target) {
+            this.file = file;
+            this.target = target;
+        }
+    }
+
+    private final List<Filter> filters;
+    private final BatchStatistics statistics;
+    private final ReportManager reportManager; // Null to not write the history report
+    private final BlockingQueue<Item> decodeQueue;
+    private final BlockingQueue<Item> filterQueue;
+    private final BlockingQueue<Item> encodeQueue;
+    private final Stage decodeStage;
+    private final Stage filterStage;
+    private final Stage encodeStage;
+    private ImageListener imageListener;
+    private volatile boolean cancelled = false;
+
+    public BatchPipeline(List<Filter> filters, int decodeThreads, int filterThreads, int encodeThreads, int queueCapacity,
+            BatchStatistics statistics, ReportManager reportManager) {
+        this.filters = filters;
+        this.statistics = statistics;
+        this.reportManager = reportManager;
+        this.decodeQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.filterQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.encodeQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.decodeStage = new Stage("decode", decodeThreads, decodeQueue, filterQueue, this::decode, statistics::addDecodeTime);
+        this.filterStage = new Stage("filter", filterThreads, filterQueue, encodeQueue, this::filter, statistics::addFilterTime);
+        this.encodeStage = new Stage("encode", encodeThreads, encodeQueue, null, this::encode, statistics::addEncodeTime);
+        statistics.setStageThreads(decodeStage.threads.size(), filterStage.threads.size(), encodeStage.threads.size());
+    }
+
+    public void setImageListener(ImageListener imageListener) {
+        this.imageListener = imageListener;
+    }
+
+    public void start() {
+        decodeStage.start();
+        filterStage.start();
+        encodeStage.start();
+    }
+
+    // Queue an image; waits while the decode queue is full
+    public void submit(Path file, Path target) throws InterruptedException {
+        decodeQueue.put(new Item(file, target));
+    }
+
+    // No more images: wait until every submitted image has gone through the three stages
+    public void finish() throws InterruptedException {
+        decodeStage.end();
+        decodeStage.join();
+        filterStage.end();
+        filterStage.join();
+        encodeStage.end();
+        encodeStage.join();
+    }
+
+    // The images still queued are dropped, the ones being processed finish their current stage
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void decode(Item item) throws IOException {
+        BufferedImage image = ImageIO.read(item.file.toFile());
+        if (image == null) {
+            throw new IOException("Unsupported image format.");
+        }
+        item.image = image;
+        item.pixels = (long) image.getWidth() * image.getHeight();
+    }
+
+    private void filter(Item item) throws InterruptedException {
+        // Big images are still split in row bands; the other threads of the stage keep filtering their own images
+        FilterRunner runner = new FilterRunner(item.image, filters, FilterTask.DEFAULT_PARALLEL_THRESHOLD, null);
+        item.image = runner.run(); // The decoded image is left to the garbage collector
+        item.filtered = true;
+    }
+
+    private void encode(Item item) throws IOException, InterruptedException {
+        try {
+            Files.createDirectories(item.target.toAbsolutePath().getParent());
+            String format = getFormat(item.target);
+            if (!ImageIO.write(item.image, format, item.target.toFile())) {
+                throw new IOException("No image writer for " + format + ".");
+            }
+        } finally {
+            FrameBufferPool.IMAGES.release(item.image);
+            item.image = null;
+        }
+        long inputBytes = Files.size(item.file);
+        long outputBytes = Files.size(item.target);
+        if (reportManager != null) {
+            reportManager.writeFilterReportEntry(LocalDateTime.now(), item.file.toAbsolutePath().toString(), filters);
+        }
+        // Counted last: if anything before fails, the image is only counted as a failure
+        statistics.addImage(item.pixels, inputBytes, outputBytes);
+        logger.debug("Filtered " + item.file + " to " + item.target);
+        if (imageListener != null) {
+            imageListener.onImageDone(item.file, item.target, null);
+        }
+    }
+
+    private void fail(Item item, Exception e) {
+        drop(item);
+        statistics.addFailure();
+        logger.error("Error filtering " + item.file + ": " + e.getMessage());
+        if (imageListener != null) {
+            imageListener.onImageDone(item.file, item.target, e);
+        }
+    }
+
+    private void drop(Item item) {
+        if (item.filtered && item.image != null) {
+            FrameBufferPool.IMAGES.release(item.image);
+        }
+        item.image = null;
+    }
+
+    static String getFormat(Path target) {
+        String name = target.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase() : "png";
+    }
+
+    private interface StageWork {
+        void process(Item item) throws Exception;
+    }
+
+    // Threads of a stage: they take images from the input queue, process them and put them in the output queue
+    private class Stage {
+        private final String name;
+        private final List<Thread> threads = new ArrayList<>();
+        private final BlockingQueue<Item> input;
+        private final BlockingQueue<Item> output; // Null for the last stage
+        private final StageWork work;
+        private final LongConsumer timer; // Adds the time spent on every image to the statistics
+
+        Stage(String name, int threadCount, BlockingQueue<Item> input, BlockingQueue<Item> output, StageWork work, LongConsumer timer) {
+            this.name = name;
+            this.input = input;
+            this.output = output;
+            this.work = work;
+            this.timer = timer;
+            for (int i = 0; i < Math.max(1, threadCount); i++) {
+                threads.add(Thread.ofPlatform().name("imagefilters-batch-" + name + "-" + i).daemon(true).unstarted(this::workLoop));
+            }
+        }
+
+        void start() {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+        }
+
+        // One end mark per thread, every thread stops after taking one
+        void end() throws InterruptedException {
+            for (int i = 0; i < threads.size(); i++) {
+                input.put(END);
+            }
+        }
+
+        void join() throws InterruptedException {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        private void workLoop() {
+            try {
+                while (true) {
+                    Item item = input.take();
+                    if (item == END) {
+                        return;
+                    }
+                    if (cancelled) {
+                        drop(item); // Neither filtered nor failed
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        work.process(item);
+                    } catch (InterruptedException e) {
+                        fail(item, e);
+                        return;
+                    } catch (Exception e) {
+                        fail(item, e);
+                        continue;
+                    } finally {
+                        timer.accept(System.nanoTime() - start);
+                    }
+                    if (output != null) {
+                        output.put(item); // Waits while the next stage is behind
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Batch " + name + " thread was interrupted.");
+            }
+        }
+    }
+}
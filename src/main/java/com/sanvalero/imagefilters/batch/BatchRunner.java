@@ -0,0 +1,84 @@
+package com.sanvalero.imagefilters.batch;
+
+import com.sanvalero.imagefilters.report.ReportManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+public class BatchRunner {
+    // This class filters the images of a batch run without JavaFX, from the command line or from the main window
+    // The files are listed lazily and fed to a BatchPipeline, which reads, filters and writes them in separate stages;
+    // submitting waits while the pipeline is full, so the memory used does not grow with the number of files
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final BatchOptions options;
+    private final BatchStatistics statistics = new BatchStatistics();
+    private final BatchPipeline pipeline;
+    private boolean printProgress = false;
+
+    // Pass a null report manager to not write the history report
+    public BatchRunner(BatchOptions options, ReportManager reportManager) {
+        this.options = options;
+        this.pipeline = new BatchPipeline(options.getFilters(), options.getDecodeThreads(), options.getParallelism(),
+                options.getEncodeThreads(), options.getQueueCapacity(), statistics, reportManager);
+    }
+
+    public BatchStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setImageListener(BatchPipeline.ImageListener imageListener) {
+        pipeline.setImageListener(imageListener);
+    }
+
+    // Print the images done every 10 seconds on the standard output
+    public void setPrintProgress(boolean printProgress) {
+        this.printProgress = printProgress;
+    }
+
+    // Stop listing files; the images already read are not filtered
+    public void cancel() {
+        pipeline.cancel();
+    }
+
+    public boolean isCancelled() {
+        return pipeline.isCancelled();
+    }
+
+    // Filter every image of the input and wait for the last one
+    public BatchStatistics run() throws IOException, InterruptedException {
+        long nextProgress = System.nanoTime() + PROGRESS_INTERVAL_NANOS;
+        pipeline.start();
+        try (BatchInput input = BatchInput.open(options.getInput())) {
+            Iterator<Path> files = input.iterator();
+            while (files.hasNext() && !pipeline.isCancelled()) {
+                Path file = files.next();
+                pipeline.submit(file, getOutputFile(input.relativize(file))); // Waits while the pipeline is full
+                if (printProgress && System.nanoTime() - nextProgress >= 0) {
+                    System.out.println("Filtered " + statistics.getImages() + " images, " + statistics.getFailures() + " failed...");
+                    nextProgress = System.nanoTime() + PROGRESS_INTERVAL_NANOS;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // A folder could not be listed
+        } finally {
+            pipeline.finish(); // Every image that was read is also written
+            statistics.finish();
+        }
+        return statistics;
+    }
+
+    // Same relative path under the output folder, with the extension of the output format if one was given
+    private Path getOutputFile(Path relativePath) {
+        Path target = options.getOutputDirectory().toPath().resolve(relativePath);
+        if (options.getFormat() == null) {
+            return target;
+        }
+        String name = target.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return target.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "." + options.getFormat());
+    }
+}
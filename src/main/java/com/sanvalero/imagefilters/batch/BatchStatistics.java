@@ -0,0 +1,97 @@
+package com.sanvalero.imagefilters.batch;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BatchStatistics {
+    // This class counts what a batch run did; the counters are updated from every worker thread
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = 0;
+    private final LongAdder images = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder filterNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private int decodeThreads = 1;
+    private int filterThreads = 1;
+    private int encodeThreads = 1;
+
+    // Threads of every stage of the BatchPipeline, to tell how busy each stage was
+    public void setStageThreads(int decodeThreads, int filterThreads, int encodeThreads) {
+        this.decodeThreads = decodeThreads;
+        this.filterThreads = filterThreads;
+        this.encodeThreads = encodeThreads;
+    }
+
+    public void addImage(long imagePixels, long readBytes, long writtenBytes) {
+        images.increment();
+        pixels.add(imagePixels);
+        bytesRead.add(readBytes);
+        bytesWritten.add(writtenBytes);
+    }
+
+    public void addFailure() {
+        failures.increment();
+    }
+
+    public void addDecodeTime(long nanos) {
+        decodeNanos.add(nanos);
+    }
+
+    public void addFilterTime(long nanos) {
+        filterNanos.add(nanos);
+    }
+
+    public void addEncodeTime(long nanos) {
+        encodeNanos.add(nanos);
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public long getImages() {
+        return images.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getPixels() {
+        return pixels.sum();
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1e9;
+    }
+
+    // Summary printed at the end of the run; the stage times are added over all the threads
+    // A stage busy close to 100% of the time is the one limiting the run, giving it more threads speeds the batch up
+    public String getSummary() {
+        double seconds = Math.max(getElapsedSeconds(), 1e-9);
+        long done = getImages();
+        long processed = Math.max(1, done + getFailures());
+        return String.format(Locale.ROOT, String.join(System.lineSeparator(),
+                "Images: %d filtered, %d failed in %.2f s",
+                "Throughput: %.1f images/s, %.1f Mpixels/s",
+                "Read: %.1f MB (%.1f MB/s), written: %.1f MB (%.1f MB/s)",
+                "Average per image: decode %.1f ms, filter %.1f ms, encode %.1f ms",
+                "Busy: decode %.0f%% of %d threads, filter %.0f%% of %d, encode %.0f%% of %d"),
+                done, getFailures(), seconds,
+                done / seconds, getPixels() / 1e6 / seconds,
+                bytesRead.sum() / 1e6, bytesRead.sum() / 1e6 / seconds, bytesWritten.sum() / 1e6, bytesWritten.sum() / 1e6 / seconds,
+                decodeNanos.sum() / 1e6 / processed, filterNanos.sum() / 1e6 / processed, encodeNanos.sum() / 1e6 / processed,
+                busyPercent(decodeNanos, decodeThreads, seconds), decodeThreads,
+                busyPercent(filterNanos, filterThreads, seconds), filterThreads,
+                busyPercent(encodeNanos, encodeThreads, seconds), encodeThreads);
+    }
+
+    private static double busyPercent(LongAdder nanos, int threads, double seconds) {
+        return nanos.sum() / 1e9 / (threads * seconds) * 100;
+    }
+}
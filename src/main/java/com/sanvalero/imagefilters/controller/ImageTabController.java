@@ -4,9 +4,16 @@ import com.sanvalero.imagefilters.filter.BrightnessFilter;
 import com.sanvalero.imagefilters.filter.Filter;
 import com.sanvalero.imagefilters.filter.GrayscaleFilter;
 import com.sanvalero.imagefilters.filter.InvertColorsFilter;
+import com.sanvalero.imagefilters.filter.FilterHistory;
 import com.sanvalero.imagefilters.filter.FilterStep;
 import com.sanvalero.imagefilters.report.ReportManager;
+import com.sanvalero.imagefilters.service.ExecutionManager;
 import com.sanvalero.imagefilters.service.FilterService;
+import com.sanvalero.imagefilters.service.JobClass;
+import com.sanvalero.imagefilters.task.FilterResultCache;
+import com.sanvalero.imagefilters.task.FilterRunner;
+import com.sanvalero.imagefilters.task.FrameBufferPool;
+import com.sanvalero.imagefilters.task.PreviewProxy;
 import com.sanvalero.imagefilters.task.ReportTask;
 
 import org.slf4j.Logger;
@@ -20,10 +27,11 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutorService;
 
 import javax.imageio.ImageIO;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
@@ -37,11 +45,17 @@ import javafx.stage.FileChooser;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.concurrent.Worker;
+import javafx.util.Duration;
 
 public class ImageTabController implements Initializable {
     // This class is responsible for managing the image tab and its filters
     // It will be used to apply filters to the image in the tab
+    // Images bigger than the preview proxy are first filtered at proxy size, and at full resolution when the image is
+    // saved or after -Dimagefilters.preview.idleMs (1500) ms without applying filters
+    // -Dimagefilters.preview.enabled=false always filters at full resolution
     private static final Logger logger = LoggerFactory.getLogger(ImageTabController.class);
+    private static final boolean PREVIEW_ENABLED = Boolean.parseBoolean(System.getProperty("imagefilters.preview.enabled", "true"));
+    private static final long PREVIEW_IDLE_MILLIS = Long.getLong("imagefilters.preview.idleMs", 1500L);
 
     @FXML
     private ImageView tabImageOriginal;
@@ -76,14 +90,32 @@ public class ImageTabController implements Initializable {
     private List<Filter> filterList = new ArrayList<>(); // List of filters to be applied to the image
     private String defaultFilePath = "user.home"; // Default file path to save the image
     
+    private ExecutionManager executionManager; // Threads for the filters and for file operations
     private FilterService filterService; // Service to apply filters to the image
-    private List<FilterStep> filterSteps = new ArrayList<>(); // List of steps processed by the filter service
-    private int currentFilterStepIndex = -1; // Index of the current filter step
+    private BufferedImage leasedInputImage; // Pooled copy of the image being filtered
+    private FilterHistory filterSteps; // Steps processed by the filter service, kept within the undo memory budget
+    private Image renderOriginal; // Full resolution image being filtered by the filter service
+    private List<Filter> renderFilters; // Filters being applied by the filter service
 
-    public ImageTabController(ReportManager reportManager, ExecutorService executorService, File selectedFile, Boolean applyFiltersOnInitialize, List<Filter> filterList) {
+    private Image proxySource; // Full resolution image the proxy was built from
+    private BufferedImage proxyImage; // Screen-sized copy of the proxy source
+    private Image pendingBase; // Full resolution image the first pending chain is applied to
+    private final List<List<Filter>> pendingChains = new ArrayList<>(); // Chains previewed but not rendered at full resolution yet
+    private PauseTransition idleTimer; // Starts the full resolution render when the user stops applying filters
+    private Runnable afterFullRender; // Run once every pending chain is rendered, e.g. to save the image
+
+    public ImageTabController(ReportManager reportManager, ExecutionManager executionManager, File selectedFile, Boolean applyFiltersOnInitialize, List<Filter> filterList) {
+        this(reportManager, executionManager, selectedFile, applyFiltersOnInitialize, filterList, JobClass.INTERACTIVE);
+    }
+
+    public ImageTabController(ReportManager reportManager, ExecutionManager executionManager, File selectedFile, Boolean applyFiltersOnInitialize, List<Filter> filterList, JobClass initialJobClass) {
         this.reportManager = reportManager;
+        this.executionManager = executionManager;
         this.filterService = new FilterService(); // Initialize the filter service
-        this.filterService.setExecutor(executorService); // Set the executor for the filter service
+        // The first filters run with the priority of the way the image was opened, the next ones are user clicks
+        this.filterService.setExecutor(executionManager.getExecutor(initialJobClass));
+        this.filterService.setResultCache(FilterResultCache.SHARED); // Chains starting like a previous one reuse its result
+        this.filterSteps = new FilterHistory(executionManager.getIoExecutor()); // Older steps are compressed in the background
         this.selectedFile = selectedFile;
         this.filterList = filterList;
         this.applyFiltersOnInitialize = applyFiltersOnInitialize;
@@ -102,31 +134,34 @@ public class ImageTabController implements Initializable {
         tabProgressBar.progressProperty().bind(filterService.progressProperty());
         filterService.stateProperty().addListener((obs, oldState, newState) -> {
             Alert alert = null;
+            // A cancelled task may still be reading the input, so only finished tasks give it back to the pool
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED) {
+                releaseInputImage();
+            }
             switch (newState) {
                 case RUNNING:
                 deactivateButtons();
                 break;
                 case SUCCEEDED:
-                logger.info("Filters applied successfully.");
-                createReport(); // Create the report after the filters are applied
-                tabImageEdited.setImage(SwingFXUtils.toFXImage(filterService.getValue(), null));
-                // Create step to save the current original and edited images
-                if (currentFilterStepIndex >= 0) {
-                    if (filterSteps.size() - 1 != currentFilterStepIndex) {
-                        // Remove all steps after the current step
-                        filterSteps.subList(currentFilterStepIndex + 1, filterSteps.size()).clear();
-                    }
-                } else {
-                    currentFilterStepIndex = 0; // Reset the index if it's the first step
+                logger.info("Filters applied successfully. " + FilterResultCache.SHARED.getStats());
+                createReport(renderFilters); // Create the report after the filters are applied
+                Image result = SwingFXUtils.toFXImage(filterService.getValue(), null);
+                // The JavaFX image holds its own copy of the pixels, so the filtered buffer can be reused
+                FrameBufferPool.IMAGES.release(filterService.getValue());
+                // Create step to save the current original and edited images, the steps after the current one are removed
+                filterSteps.add(renderOriginal, result);
+                if (!pendingChains.isEmpty()) {
+                    pendingChainRendered(result); // Rendered in the background, no alert
+                    break;
                 }
-                filterSteps.add(new FilterStep(tabImageOriginal.getImage(), tabImageEdited.getImage()));
-                currentFilterStepIndex = filterSteps.size() - 1; // Update the index to the last step
+                tabImageEdited.setImage(result);
                 // Show success alert
                 alert = new Alert(Alert.AlertType.INFORMATION, "Filters applied successfully to "+ selectedFile.getName() + ".");
                 alert.showAndWait();
                 reactivateButtons(); // Reactivate the buttons after the filters are applied
                 break;
                 case FAILED:
+                afterFullRender = null; // The image is not saved if its full resolution render failed
                 logger.error("Failed to apply filters: " + filterService.getException().getMessage());
                 alert = new Alert(Alert.AlertType.ERROR, "Failed to apply filters: " + filterService.getException().getMessage());
                 alert.showAndWait();
@@ -138,6 +173,7 @@ public class ImageTabController implements Initializable {
                     reactivateButtons();
                     return;
                 }
+                afterFullRender = null;
                 logger.warn("Filter task was cancelled.");
                 alert = new Alert(Alert.AlertType.WARNING, "Filter task was cancelled.");
                 alert.showAndWait();
@@ -147,12 +183,31 @@ public class ImageTabController implements Initializable {
                 break;
             }
         });
-        // Load the image into the ImageView
-        tabImageOriginal.setImage(new Image(selectedFile.toURI().toString()));
-        // Apply filters if the flag is set to true
-        if (applyFiltersOnInitialize) {
-            applyFilters();
-        }
+        idleTimer = new PauseTransition(Duration.millis(PREVIEW_IDLE_MILLIS));
+        idleTimer.setOnFinished(event -> renderPendingChains());
+        // Load the image into the ImageView on an I/O thread, the tab stays disabled until it is loaded
+        deactivateButtons();
+        executionManager.getIoExecutor().execute(() -> {
+            Image image = new Image(selectedFile.toURI().toString());
+            if (PREVIEW_ENABLED && !image.isError() && PreviewProxy.isWorthPreviewing(image, PreviewProxy.DEFAULT_MAX_SIZE)) {
+                getProxy(image); // Built once, every preview of the loaded image starts from it
+            }
+            Platform.runLater(() -> {
+                if (image.isError()) {
+                    logger.error("Error loading image: " + image.getException().getMessage());
+                    Alert alert = new Alert(Alert.AlertType.ERROR, "Error loading image: " + image.getException().getMessage());
+                    alert.showAndWait();
+                    return;
+                }
+                tabImageOriginal.setImage(image);
+                // Apply filters if the flag is set to true
+                if (applyFiltersOnInitialize) {
+                    applyFilters();
+                } else {
+                    reactivateButtons();
+                }
+            });
+        });
     }
 
     @FXML
@@ -160,6 +215,7 @@ public class ImageTabController implements Initializable {
         logger.info("Applying new filters to the image...");
         // Add the selected filters to the filter list
         filterList = getSelectedFilters();
+        filterService.setExecutor(executionManager.getExecutor(JobClass.INTERACTIVE)); // The user is waiting for this one
         tabImageOriginal.setImage(tabImageEdited.getImage()); // Set the original image as the new image to apply filters to
         tabImageEdited.setImage(null); // Clear the edited image
         applyFilters();
@@ -167,16 +223,144 @@ public class ImageTabController implements Initializable {
 
     private void applyFilters() {
         logger.info("Applying filters to the image...");
+        Image image = tabImageOriginal.getImage();
+        // Once a chain is previewed, the next ones are previewed too so they are rendered in order
+        if (PREVIEW_ENABLED && (!pendingChains.isEmpty() || PreviewProxy.isWorthPreviewing(image, PreviewProxy.DEFAULT_MAX_SIZE))) {
+            previewFilters(image);
+        } else {
+            renderFullResolution(image, filterList);
+        }
+    }
+
+    private void renderFullResolution(Image image, List<Filter> filters) {
         // Set up the filter service with the selected filters and the image to be filtered
-        BufferedImage bufferedImage = SwingFXUtils.fromFXImage(tabImageOriginal.getImage(), null);
-        filterService.setExecutionParameters(bufferedImage, filterList); // Set the parameters for the filter service
+        renderOriginal = image;
+        renderFilters = filters;
+        BufferedImage bufferedImage = FrameBufferPool.IMAGES.lease((int) image.getWidth(), (int) image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        bufferedImage = SwingFXUtils.fromFXImage(image, bufferedImage); // Fills the leased image instead of allocating one
+        leasedInputImage = bufferedImage; // Overwrites the one of a cancelled run, which is left to the garbage collector
+        filterService.setExecutionParameters(bufferedImage, filters, image); // Set the parameters for the filter service
         // Start the filter service to apply the filters
         filterService.restart();
     }
 
-    private void createReport() {
-        // Generate the report in a new thread
-        ReportTask reportTask = new ReportTask(reportManager, LocalDateTime.now(), selectedFile.getAbsolutePath(), filterList);
+    private void previewFilters(Image image) {
+        if (pendingChains.isEmpty()) {
+            pendingBase = image; // The full resolution image the chains will be rendered from
+        }
+        Image source = pendingBase;
+        pendingChains.add(filterList);
+        // Every preview starts from the proxy with the pending chains one after the other, the cache keeps the result
+        // of the previous chains so only the new one is filtered
+        List<Filter> filters = new ArrayList<>();
+        for (List<Filter> chain : pendingChains) {
+            filters.addAll(chain);
+        }
+        idleTimer.stop();
+        deactivateButtons();
+        // The proxy is small enough to be filtered on one thread, ahead of the batch and video jobs
+        executionManager.getExecutor(JobClass.INTERACTIVE).execute(() -> {
+            try {
+                BufferedImage proxy = getProxy(source);
+                FilterRunner runner = new FilterRunner(proxy, filters, Long.MAX_VALUE, null);
+                runner.setResultCache(FilterResultCache.SHARED, proxy);
+                BufferedImage result = runner.run();
+                Image preview = SwingFXUtils.toFXImage(result, null);
+                FrameBufferPool.IMAGES.release(result);
+                Platform.runLater(() -> showPreview(preview));
+            } catch (InterruptedException | RuntimeException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                logger.error("Failed to preview filters: " + e.getMessage());
+                Platform.runLater(() -> {
+                    pendingChains.remove(pendingChains.size() - 1);
+                    Alert alert = new Alert(Alert.AlertType.ERROR, "Failed to preview filters: " + e.getMessage());
+                    alert.showAndWait();
+                    reactivateButtons();
+                });
+            }
+        });
+    }
+
+    private void showPreview(Image preview) {
+        tabImageEdited.setImage(preview);
+        logger.info("Preview shown, " + pendingChains.size() + " filter chains waiting for the full resolution render.");
+        reactivateButtons();
+        idleTimer.playFromStart();
+    }
+
+    // Called on I/O and filter threads, the proxy of the last source is kept
+    private synchronized BufferedImage getProxy(Image source) {
+        if (proxySource != source) {
+            if (proxyImage != null) {
+                FilterResultCache.SHARED.invalidate(proxyImage); // Its previews will not be asked for again
+            }
+            proxyImage = PreviewProxy.create(source, PreviewProxy.DEFAULT_MAX_SIZE);
+            proxySource = source;
+            logger.info("Preview proxy of " + proxyImage.getWidth() + "x" + proxyImage.getHeight() + " built.");
+        }
+        return proxyImage;
+    }
+
+    // Render the previewed chains at full resolution, one filter step each
+    private void renderPendingChains() {
+        idleTimer.stop();
+        if (pendingChains.isEmpty()) {
+            runAfterFullRender();
+            return;
+        }
+        logger.info("Rendering " + pendingChains.size() + " filter chains at full resolution...");
+        renderFullResolution(pendingBase, pendingChains.get(0));
+    }
+
+    private void pendingChainRendered(Image result) {
+        pendingChains.remove(0);
+        pendingBase = result;
+        if (!pendingChains.isEmpty()) {
+            renderFullResolution(pendingBase, pendingChains.get(0));
+            return;
+        }
+        // The full resolution result replaces the preview
+        tabImageOriginal.setImage(renderOriginal);
+        tabImageEdited.setImage(result);
+        reactivateButtons();
+        runAfterFullRender();
+    }
+
+    private void runAfterFullRender() {
+        Runnable action = afterFullRender;
+        afterFullRender = null;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    // Drop the chains that were only previewed and show the last rendered step again
+    private void discardPreview() {
+        logger.info("Discarding the preview of " + pendingChains.size() + " filter chains...");
+        idleTimer.stop();
+        pendingChains.clear();
+        FilterStep step = filterSteps.getCurrentStep();
+        if (step != null) {
+            showFilterStep(step, "Undo");
+        } else {
+            tabImageOriginal.setImage(pendingBase);
+            tabImageEdited.setImage(null);
+            reactivateButtons();
+        }
+    }
+
+    private void releaseInputImage() {
+        if (leasedInputImage != null) {
+            FrameBufferPool.IMAGES.release(leasedInputImage);
+            leasedInputImage = null;
+        }
+    }
+
+    private void createReport(List<Filter> filters) {
+        // Generate the report on an I/O thread
+        ReportTask reportTask = new ReportTask(reportManager, LocalDateTime.now(), selectedFile.getAbsolutePath(), filters);
         reportTask.stateProperty().addListener((obs2, oldState2, newState2) -> {
             Alert alert2 = null;
             switch (newState2) {
@@ -194,17 +378,17 @@ public class ImageTabController implements Initializable {
                 break;
             }
         });
-        new Thread(reportTask).start();
+        executionManager.getIoExecutor().execute(reportTask);
     }
 
     private void reactivateButtons() {
         tabApplyBtn.setDisable(false);
-        if (currentFilterStepIndex > 0) {
+        if (filterSteps.canUndo() || !pendingChains.isEmpty()) { // Undoing a preview discards it
             tabUndoBtn.setDisable(false);
         } else {
             tabUndoBtn.setDisable(true);
         }
-        if (currentFilterStepIndex < filterSteps.size() - 1) {
+        if (filterSteps.canRedo() && pendingChains.isEmpty()) {
             tabRedoBtn.setDisable(false);
         } else {
             tabRedoBtn.setDisable(true);
@@ -253,7 +437,6 @@ public class ImageTabController implements Initializable {
     private void saveImage(ActionEvent event) {
         // Save the image to a file
         logger.info("Saving image...");
-        BufferedImage bufferedImage = SwingFXUtils.fromFXImage(tabImageEdited.getImage(), null);
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save Image");
         fileChooser.getExtensionFilters().add(
@@ -277,25 +460,36 @@ public class ImageTabController implements Initializable {
         }
         File selectedFile = fileChooser.showSaveDialog(tabSaveBtn.getScene().getWindow());
         if (selectedFile != null) {
+            // A previewed image is rendered at full resolution first
+            afterFullRender = () -> writeImage(selectedFile);
+            renderPendingChains();
+        }
+    }
+
+    private void writeImage(File file) {
+        BufferedImage bufferedImage = SwingFXUtils.fromFXImage(tabImageEdited.getImage(), null);
+        // Encoding and writing the PNG can take a while, do it outside the FX thread
+        executionManager.getIoExecutor().execute(() -> {
             try {
-                ImageIO.write(bufferedImage, "png", selectedFile);
-                logger.info("Image saved successfully to: " + selectedFile.getAbsolutePath());
+                ImageIO.write(bufferedImage, "png", file);
+                logger.info("Image saved successfully to: " + file.getAbsolutePath());
             } catch (IOException e) {
                 logger.error("Error saving image: " + e.getMessage());
             }
-        }
+        });
     }
 
     @FXML
     private void undo(ActionEvent event) {
         // Change to the previous filter step
         logger.info("Undoing last filter step...");
-        if (currentFilterStepIndex > 0) {
-            currentFilterStepIndex--;
-            tabImageOriginal.setImage(filterSteps.get(currentFilterStepIndex).getOriginalImage());
-            tabImageEdited.setImage(filterSteps.get(currentFilterStepIndex).getResultImage());
-            logger.info("Undo successful. Current step index: " + currentFilterStepIndex);
-            reactivateButtons(); // Reactivate buttons after undo to update their state
+        if (!pendingChains.isEmpty()) {
+            discardPreview();
+            return;
+        }
+        FilterStep step = filterSteps.undo();
+        if (step != null) {
+            showFilterStep(step, "Undo");
         } else {
             logger.warn("No more steps to undo.");
         }
@@ -305,26 +499,54 @@ public class ImageTabController implements Initializable {
     private void redo(ActionEvent event) {
         // Change to the next filter step
         logger.info("Redoing last filter step...");
-        if (currentFilterStepIndex < filterSteps.size() - 1) {
-            currentFilterStepIndex++;
-            tabImageOriginal.setImage(filterSteps.get(currentFilterStepIndex).getOriginalImage());
-            tabImageEdited.setImage(filterSteps.get(currentFilterStepIndex).getResultImage());
-            logger.info("Redo successful. Current step index: " + currentFilterStepIndex);
-            reactivateButtons(); // Reactivate buttons after redo to update their state
+        FilterStep step = filterSteps.redo();
+        if (step != null) {
+            showFilterStep(step, "Redo");
         } else {
             logger.warn("No more steps to redo.");
         }
     }
 
+    private void showFilterStep(FilterStep step, String action) {
+        // The images of an older step may be compressed or on disk, so they are decoded on an I/O thread
+        deactivateButtons();
+        executionManager.getIoExecutor().execute(() -> {
+            try {
+                Image originalImage = step.getOriginalImage();
+                Image resultImage = step.getResultImage();
+                Platform.runLater(() -> {
+                    tabImageOriginal.setImage(originalImage);
+                    tabImageEdited.setImage(resultImage);
+                    logger.info(action + " successful. Current step index: " + filterSteps.getCurrentIndex());
+                    reactivateButtons(); // Reactivate buttons after undo or redo to update their state
+                });
+            } catch (IOException e) {
+                logger.error("Error loading filter step: " + e.getMessage());
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.ERROR, "Error loading filter step: " + e.getMessage());
+                    alert.showAndWait();
+                    reactivateButtons();
+                });
+            }
+        });
+    }
+
     // This method can be called from the main controller to set the default file path for saving images
     public void updateDefaultFilePath(String newPath) {
         this.defaultFilePath = newPath;
         logger.info("Default file path updated to: " + newPath);
     }
 
-    public void updateExecutorService(ExecutorService executorService) {
-        this.filterService.setExecutor(executorService); // Update the executor service for the filter service
-        logger.info("Executor service updated.");
+    // Called by the main controller when the tab is closed, frees the undo steps and their files
+    public void close() {
+        idleTimer.stop();
+        pendingChains.clear();
+        synchronized (this) {
+            if (proxyImage != null) {
+                FilterResultCache.SHARED.invalidate(proxyImage);
+            }
+        }
+        filterSteps.close();
     }
 
 }
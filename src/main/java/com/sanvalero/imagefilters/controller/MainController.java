@@ -4,21 +4,35 @@ import com.sanvalero.imagefilters.filter.Filter;
 import com.sanvalero.imagefilters.filter.GrayscaleFilter;
 import com.sanvalero.imagefilters.filter.InvertColorsFilter;
 import com.sanvalero.imagefilters.App;
+import com.sanvalero.imagefilters.batch.BatchOptions;
+import com.sanvalero.imagefilters.batch.BatchRunner;
 import com.sanvalero.imagefilters.filter.BrightnessFilter;
+import com.sanvalero.imagefilters.report.HistoryCursor;
+import com.sanvalero.imagefilters.report.HistoryEntry;
+import com.sanvalero.imagefilters.report.HistoryPage;
+import com.sanvalero.imagefilters.report.HistoryQuery;
+import com.sanvalero.imagefilters.report.HistoryStore;
 import com.sanvalero.imagefilters.report.ReportManager;
+import com.sanvalero.imagefilters.service.ExecutionManager;
+import com.sanvalero.imagefilters.service.ExecutionStrategy;
+import com.sanvalero.imagefilters.service.JobClass;
+import com.sanvalero.imagefilters.task.BatchTask;
+import com.sanvalero.imagefilters.task.DelayPolicy;
+import com.sanvalero.imagefilters.task.HistoryPageTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.net.URL;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -27,16 +41,29 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
@@ -47,9 +74,9 @@ public class MainController implements Initializable {
     private static final Logger logger = LoggerFactory.getLogger(MainController.class);
 
     private ReportManager reportManager = new ReportManager();
-    private int maxThreadNumber = 2; // Default value, can be changed by the user
-    private ExecutorService executorService = Executors.newFixedThreadPool(maxThreadNumber);
-    private List<ExecutorService> executorServices = new ArrayList<>();
+    // Entries read per page of the history window, it can be set with -Dimagefilters.history.pageSize=<entries>
+    private static final int HISTORY_PAGE_SIZE = Integer.getInteger("imagefilters.history.pageSize", 200);
+    private ExecutionManager executionManager = new ExecutionManager(); // Strategy and thread number can be changed by the user
 
     @FXML
     private VBox rootVBox;
@@ -69,19 +96,14 @@ public class MainController implements Initializable {
     private TabPane imagesTabPane;
 
     public void shutdownExecutorService() {
-        executorServices.add(executorService);
-        logger.info("Shutting down executor service...");
-        if (executorServices.size() > 0) {
-            for (ExecutorService executor : executorServices) {
-                if (executor != null && !executor.isShutdown()) {
-                    executor.shutdown();
-                    logger.info("Executor service shut down.");
-                } else {
-                    logger.warn("Executor service is already shut down or null.");
-                }
-            }
-        } else {
-            logger.warn("No executor services to shut down.");
+        executionManager.shutdown();
+        // Reports still being written finish before the history file is closed
+        try {
+            executionManager.awaitIoTermination(5, TimeUnit.SECONDS);
+            reportManager.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while closing the history report.");
         }
     }
 
@@ -114,7 +136,7 @@ public class MainController implements Initializable {
         if (selectedFile != null) {
             logger.info("Selected image: " + selectedFile.getAbsolutePath());
             List<Filter> filterList = getSelectedFilters();
-            createImageTab(selectedFile, true, filterList); // Change true by variable applyFilters if needed or implemented in the future
+            createImageTab(selectedFile, true, filterList, JobClass.INTERACTIVE); // Change true by variable applyFilters if needed or implemented in the future
         }
     }
 
@@ -132,7 +154,7 @@ public class MainController implements Initializable {
             List<Filter> filterList = getSelectedFilters();
             for (File selectedFile : selectedFiles) {
                 logger.info(selectedFile.getAbsolutePath());
-                createImageTab(selectedFile, true, filterList); // Change true by variable applyFilters if needed or implemented in the future
+                createImageTab(selectedFile, true, filterList, JobClass.BATCH); // Change true by variable applyFilters if needed or implemented in the future
             }
         }
     }
@@ -157,7 +179,7 @@ public class MainController implements Initializable {
                 List<Filter> filterList = getSelectedFilters();
                 for (File imageFile : imageFiles) {
                     logger.info("Opening image: " + imageFile.getAbsolutePath());
-                    createImageTab(imageFile, true, filterList);
+                    createImageTab(imageFile, true, filterList, JobClass.BATCH);
                 }
             } else {
                 logger.info("No image files found in the folder.");
@@ -165,6 +187,79 @@ public class MainController implements Initializable {
         }
     }
 
+    @FXML
+    private void filterFolderToFiles(ActionEvent event) {
+        logger.info("Filtering images from folder to files...");
+        // The images are read, filtered and written by a BatchPipeline instead of opening one tab per image
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select Folder");
+        File selectedDirectory = directoryChooser.showDialog(rootVBox.getScene().getWindow());
+        if (selectedDirectory == null) {
+            return;
+        }
+        List<Filter> filterList = getSelectedFilters();
+        if (filterList.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING, "Select at least one filter to apply to the folder.");
+            alert.showAndWait();
+            return;
+        }
+        File[] imageFiles = selectedDirectory.listFiles((dir, name) -> {
+            return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp");
+        });
+        if (imageFiles == null || imageFiles.length == 0) {
+            logger.info("No image files found in the folder.");
+            return;
+        }
+        directoryChooser.setTitle("Select Output Folder");
+        directoryChooser.setInitialDirectory(selectedDirectory);
+        File outputDirectory = directoryChooser.showDialog(rootVBox.getScene().getWindow());
+        if (outputDirectory == null) {
+            return;
+        }
+        logger.info("Filtering " + imageFiles.length + " image(s) into " + outputDirectory.getAbsolutePath());
+        BatchOptions options = new BatchOptions(selectedDirectory.getAbsolutePath(), filterList, outputDirectory, executionManager.getParallelism());
+        BatchTask batchTask = new BatchTask(new BatchRunner(options, reportManager), imageFiles.length);
+        // Small window with the progress of the batch and a button to cancel it
+        Stage stage = new Stage();
+        stage.setTitle("Filter folder " + selectedDirectory.getName());
+        Label messageLabel = new Label();
+        messageLabel.textProperty().bind(batchTask.messageProperty());
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(batchTask.progressProperty());
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> batchTask.cancel());
+        stage.setOnCloseRequest(e -> batchTask.cancel());
+        VBox layout = new VBox(10, messageLabel, progressBar, cancelButton);
+        layout.setPadding(new Insets(10));
+        stage.setScene(new Scene(layout));
+        batchTask.stateProperty().addListener((obs, oldState, newState) -> {
+            Alert alert = null;
+            switch (newState) {
+                case SUCCEEDED:
+                stage.close();
+                alert = new Alert(Alert.AlertType.INFORMATION, batchTask.getValue().getSummary());
+                alert.setHeaderText("Images filtered into " + outputDirectory.getAbsolutePath());
+                alert.showAndWait();
+                break;
+                case FAILED:
+                stage.close();
+                logger.error("Failed to filter folder: " + batchTask.getException().getMessage());
+                alert = new Alert(Alert.AlertType.ERROR, "Failed to filter folder: " + batchTask.getException().getMessage());
+                alert.showAndWait();
+                break;
+                case CANCELLED:
+                stage.close();
+                logger.warn("Folder batch was cancelled.");
+                break;
+                default:
+                break;
+            }
+        });
+        stage.show();
+        executionManager.getIoExecutor().execute(batchTask);
+    }
+
     @FXML
     private void openVideo(ActionEvent event) {
         logger.info("Opening video...");
@@ -179,7 +274,7 @@ public class MainController implements Initializable {
             // Create a new tab for the video processing
             try {
                 FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("videoTab.fxml"));
-                VideoTabController videoTabController = new VideoTabController(reportManager, executorService, selectedFile, true, filterList); // Change true by variable applyFilters if needed or implemented in the future
+                VideoTabController videoTabController = new VideoTabController(reportManager, executionManager, selectedFile, true, filterList); // Change true by variable applyFilters if needed or implemented in the future
                 fxmlLoader.setController(videoTabController);
                 Tab newTab = new Tab(selectedFile.getName(), fxmlLoader.load());
                 newTab.setUserData(videoTabController); // Store the controller in the tab for later access
@@ -191,14 +286,15 @@ public class MainController implements Initializable {
         }
     }
     
-    private void createImageTab(File selectedFile, Boolean applyFilters, List<Filter> filterList) {
+    private void createImageTab(File selectedFile, Boolean applyFilters, List<Filter> filterList, JobClass jobClass) {
         logger.info("Creating image tab for: " + selectedFile.getName());
         try {
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("imageTab.fxml"));
-            ImageTabController imageTabController = new ImageTabController(reportManager, executorService, selectedFile, applyFilters, filterList);
+            ImageTabController imageTabController = new ImageTabController(reportManager, executionManager, selectedFile, applyFilters, filterList, jobClass);
             fxmlLoader.setController(imageTabController);
             Tab newTab = new Tab(selectedFile.getName(), fxmlLoader.load());
             newTab.setUserData(imageTabController); // Store the controller in the tab for later access
+            newTab.setOnClosed(event -> imageTabController.close());
             imagesTabPane.getTabs().add(newTab);
             logger.info("Image tab created for: " + selectedFile.getName());
         } catch (Exception e) {
@@ -274,23 +370,184 @@ public class MainController implements Initializable {
             tableView.getColumns().add(column);
         }
 
-        List<List<String>> reportEntries = reportManager.readFilterReportEntries();
         ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
-        for (List<String> entry : reportEntries) {
-            ObservableList<String> row = FXCollections.observableArrayList(entry);
-            data.add(row);
-        }
         tableView.setItems(data);
         tableView.setPrefWidth(900);
         tableView.setPrefHeight(600);
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+
+        // Search conditions, an empty one matches every entry
+        DatePicker fromPicker = new DatePicker();
+        fromPicker.setPromptText("From");
+        DatePicker toPicker = new DatePicker();
+        toPicker.setPromptText("To");
+        TextField pathField = new TextField();
+        pathField.setPromptText("Path starts with");
+        TextField filterField = new TextField();
+        filterField.setPromptText("Filter");
+        Button searchButton = new Button("Search");
+        HBox searchBox = new HBox(5, fromPicker, toPicker, pathField, filterField, searchButton);
+        Label statusLabel = new Label();
+        Button loadMoreButton = new Button("Load more");
+        CheckBox liveCheckBox = new CheckBox("Live");
+        liveCheckBox.setSelected(true);
+        HBox statusBox = new HBox(10, loadMoreButton, liveCheckBox, statusLabel);
+
+        // Only the first page is read when the window opens, the next ones when the table is scrolled to the end
+        HistoryPager pager = new HistoryPager(data, statusLabel, loadMoreButton);
+        // New entries are added at the top while the window is open
+        HistoryStore.AppendListener liveTailListener = (entries, sequence) -> Platform.runLater(() -> {
+            if (liveCheckBox.isSelected()) {
+                pager.addLiveEntries(entries, sequence);
+            }
+        });
+        reportManager.addLiveTailListener(liveTailListener);
+        stage.setOnHidden(event -> reportManager.removeLiveTailListener(liveTailListener));
+        searchButton.setOnAction(event -> {
+            HistoryQuery query = new HistoryQuery();
+            if (fromPicker.getValue() != null) {
+                query.setFrom(fromPicker.getValue().atStartOfDay());
+            }
+            if (toPicker.getValue() != null) {
+                query.setTo(toPicker.getValue().atTime(LocalTime.MAX));
+            }
+            query.setPathPrefix(pathField.getText());
+            query.setFilterName(filterField.getText());
+            pager.search(query);
+        });
+        loadMoreButton.setOnAction(event -> pager.loadNextPage());
+        pager.search(new HistoryQuery());
 
-        VBox root = new VBox(tableView);
+        VBox root = new VBox(10, searchBox, tableView, statusBox);
         root.setPadding(new Insets(10));
         root.setPrefSize(900, 600);
 
         Scene scene = new Scene(root);
         stage.setScene(scene);
         stage.show();
+        for (Node node : tableView.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                ScrollBar scrollBar = (ScrollBar) node;
+                scrollBar.valueProperty().addListener((obs, oldValue, newValue) -> {
+                    if (newValue.doubleValue() >= scrollBar.getMax()) {
+                        pager.loadNextPage();
+                    }
+                });
+            }
+        }
+    }
+
+    // Loads the pages of a history query into the table, one at a time on an I/O thread
+    private class HistoryPager {
+        private final ObservableList<ObservableList<String>> data;
+        private final Label statusLabel;
+        private final Button loadMoreButton;
+        private HistoryQuery query;
+        private HistoryCursor cursor;
+        private HistoryPageTask runningTask;
+        private long pageSequence = -1; // Sequence of the first page, -1 until it is read
+        private final List<HistoryEntry> pendingLiveEntries = new ArrayList<>(); // Appended while the first page is read
+        private final List<Long> pendingLiveSequences = new ArrayList<>();
+
+        HistoryPager(ObservableList<ObservableList<String>> data, Label statusLabel, Button loadMoreButton) {
+            this.data = data;
+            this.statusLabel = statusLabel;
+            this.loadMoreButton = loadMoreButton;
+        }
+
+        void search(HistoryQuery newQuery) {
+            if (runningTask != null) {
+                runningTask.cancel(); // Its page belongs to the previous search
+            }
+            query = newQuery;
+            cursor = null;
+            pageSequence = -1;
+            pendingLiveEntries.clear();
+            pendingLiveSequences.clear();
+            data.clear();
+            load();
+        }
+
+        // Entries of a group appended to the store, oldest first
+        void addLiveEntries(List<HistoryEntry> entries, long sequence) {
+            if (pageSequence < 0) {
+                // The first page may or may not contain them, it is decided when it arrives
+                pendingLiveEntries.addAll(entries);
+                for (int i = 0; i < entries.size(); i++) {
+                    pendingLiveSequences.add(sequence);
+                }
+                return;
+            }
+            if (sequence <= pageSequence) {
+                return; // Already in the first page
+            }
+            for (HistoryEntry entry : entries) {
+                if (query.accepts(entry)) {
+                    data.add(0, FXCollections.observableArrayList(entry.toRow()));
+                }
+            }
+            statusLabel.setText(data.size() + " entries" + (cursor != null ? ", scroll down to load more" : ""));
+        }
+
+        void loadNextPage() {
+            if (runningTask == null && cursor != null) {
+                load();
+            }
+        }
+
+        private void load() {
+            HistoryPageTask task = new HistoryPageTask(reportManager, query, cursor, HISTORY_PAGE_SIZE);
+            runningTask = task;
+            loadMoreButton.setDisable(true);
+            statusLabel.textProperty().bind(task.messageProperty());
+            task.stateProperty().addListener((obs, oldState, newState) -> {
+                if (runningTask != task) {
+                    return;
+                }
+                switch (newState) {
+                    case SUCCEEDED:
+                    HistoryPage page = task.getValue();
+                    for (HistoryEntry entry : page.getEntries()) {
+                        data.add(FXCollections.observableArrayList(entry.toRow()));
+                    }
+                    cursor = page.getNextCursor();
+                    finished(data.size() + " entries" + (page.hasMore() ? ", scroll down to load more" : ""));
+                    startLiveTail(page.getSequence());
+                    break;
+                    case FAILED:
+                    logger.error("Failed to read the history report: " + task.getException().getMessage());
+                    finished("Failed to read the history report: " + task.getException().getMessage());
+                    startLiveTail(0);
+                    break;
+                    case CANCELLED:
+                    finished("History loading was cancelled.");
+                    break;
+                    default:
+                    break;
+                }
+            });
+            executionManager.getIoExecutor().execute(task);
+        }
+
+        // Add the entries appended while the first page was read that are not in it
+        private void startLiveTail(long sequence) {
+            if (pageSequence >= 0) {
+                return;
+            }
+            pageSequence = sequence;
+            for (int i = 0; i < pendingLiveEntries.size(); i++) {
+                addLiveEntries(List.of(pendingLiveEntries.get(i)), pendingLiveSequences.get(i));
+            }
+            pendingLiveEntries.clear();
+            pendingLiveSequences.clear();
+        }
+
+        private void finished(String message) {
+            runningTask = null;
+            statusLabel.textProperty().unbind();
+            statusLabel.setText(message);
+            loadMoreButton.setDisable(cursor == null);
+        }
     }
 
     @FXML
@@ -313,8 +570,9 @@ public class MainController implements Initializable {
         TextInputDialog dialog = new TextInputDialog();
         dialog.setTitle("Max Thread Number");
         dialog.setHeaderText("Set the maximum number of threads for the executor service.\n"
-                            + "Actual value: " + maxThreadNumber + "\n"
-                            + "*This change will not be applied to current waiting tasks.");
+                            + "Actual value: " + executionManager.getParallelism() + " (" + executionManager.getStrategy() + ")\n"
+                            + "Jobs: " + executionManager.getJobScheduler().getStats().replace(" | ", "\n          ") + "\n"
+                            + "*At most this number of filter jobs run at the same time, waiting jobs use the new value.");
         dialog.setContentText("Enter the maximum number of threads:");
         dialog.setGraphic(null); // Remove the default graphic icon
         // Wait for the user to enter a number
@@ -326,26 +584,49 @@ public class MainController implements Initializable {
                     throw new NumberFormatException("Number must be greater than 0.");
                 }
                 logger.info("Setting max thread number to: " + num);
-                maxThreadNumber = num;
-                ExecutorService newExecutorService = Executors.newFixedThreadPool(num);
-                // Assign the new executor service to the image tab controllers and exclude the video tab controllers
-                for (Tab tab : imagesTabPane.getTabs()) {
-                    if (tab.getUserData() instanceof VideoTabController) {
-                        continue; // Skip video tabs
-                    }
-                    ImageTabController imageTabController = (ImageTabController) tab.getUserData();
-                    if (imageTabController != null) {
-                        imageTabController.updateExecutorService(newExecutorService);
-                    }
-                }
-                // Store executor service for future use
-                executorServices.add(executorService);
-                // Set the new executor service
-                executorService = newExecutorService;
+                // Every tab shares the same executor, so resizing it is enough
+                executionManager.setParallelism(num);
             } catch (NumberFormatException e) {
                 logger.error("Invalid number format: " + number);
                 logger.debug(e.toString());
             }
         });
     }
+
+    @FXML
+    public void modifyExecutionStrategy() {
+        List<ExecutionStrategy> strategies = List.of(ExecutionStrategy.values());
+        ChoiceDialog<ExecutionStrategy> dialog = new ChoiceDialog<>(executionManager.getStrategy(), strategies);
+        dialog.setTitle("Execution Strategy");
+        dialog.setHeaderText("Set how the filters are run.\n"
+                            + "Actual value: " + executionManager.getStrategy() + " with " + executionManager.getParallelism() + " threads\n"
+                            + "FIXED: fixed thread pool | WORK_STEALING: fork/join pool | VIRTUAL_THREADS: one virtual thread per task\n"
+                            + "*Waiting tasks finish on the previous executor.");
+        dialog.setContentText("Execution strategy:");
+        dialog.setGraphic(null); // Remove the default graphic icon
+        Optional<ExecutionStrategy> result = dialog.showAndWait();
+        result.ifPresent(strategy -> {
+            logger.info("Setting execution strategy to: " + strategy);
+            executionManager.setStrategy(strategy);
+        });
+    }
+
+    @FXML
+    public void modifyDelayPolicy() {
+        List<String> policies = List.of("none", "fixed:500", "column:10");
+        String currentPolicy = DelayPolicy.getDefault().toString();
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(policies.contains(currentPolicy) ? currentPolicy : policies.get(0), policies);
+        dialog.setTitle("Processing Delay");
+        dialog.setHeaderText("Set the artificial delay added while filtering images.\n"
+                            + "Actual value: " + currentPolicy + "\n"
+                            + "none: no delay | fixed: 500 ms per image | column: 10 ms per image column (demo)\n"
+                            + "*This change will be applied to the next filter executions.");
+        dialog.setContentText("Delay policy:");
+        dialog.setGraphic(null); // Remove the default graphic icon
+        Optional<String> result = dialog.showAndWait();
+        result.ifPresent(policy -> {
+            logger.info("Setting delay policy to: " + policy);
+            DelayPolicy.setDefault(DelayPolicy.parse(policy));
+        });
+    }
 }
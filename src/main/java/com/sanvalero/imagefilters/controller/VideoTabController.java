@@ -5,7 +5,10 @@ import org.slf4j.LoggerFactory;
 
 import com.sanvalero.imagefilters.filter.Filter;
 import com.sanvalero.imagefilters.report.ReportManager;
-import com.sanvalero.imagefilters.service.FilterService;
+import com.sanvalero.imagefilters.service.ExecutionManager;
+import com.sanvalero.imagefilters.service.JobClass;
+import com.sanvalero.imagefilters.service.FrameScheduler;
+import com.sanvalero.imagefilters.service.VideoPipeline;
 import com.sanvalero.imagefilters.service.VideoReadService;
 import com.sanvalero.imagefilters.service.VideoWriteService;
 import com.sanvalero.imagefilters.task.ReportTask;
@@ -15,12 +18,9 @@ import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.net.URL;
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.CancellationException;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
@@ -42,19 +42,25 @@ public class VideoTabController implements Initializable {
     private ProgressBar tabProgressBar;
     
     private ReportManager reportManager;
+    private ExecutionManager executionManager;
+    private VideoPipeline videoPipeline;
     private VideoReadService videoReadService;
+    private VideoWriteService videoWriteService;
     private File selectedFile;
     private List<Filter> filterList;
     private Boolean applyFiltersOnInitialize;
-    private int totalFrames;
-    private Lock lockMatFramesMap = new java.util.concurrent.locks.ReentrantLock();
-    private Map<Integer, Mat> matFramesMap = new HashMap<>();
-    private Map<Integer, Mat> matFramesFailedMap = new HashMap<>();
 
-    public VideoTabController(ReportManager reportManager, ExecutorService executorService, File selectedFile, Boolean applyFiltersOnInitialize, List<Filter> filterList) {
+    public VideoTabController(ReportManager reportManager, ExecutionManager executionManager, File selectedFile, Boolean applyFiltersOnInitialize, List<Filter> filterList) {
         this.reportManager = reportManager;
-        this.videoReadService = new VideoReadService(executorService, selectedFile, filterList); // Initialize the video service
-        this.videoReadService.setExecutor(executorService);
+        this.executionManager = executionManager;
+        // Decoding and encoding run on their own service threads, only the filtering uses the shared executor, with the
+        // lowest priority so the image tabs stay responsive
+        // In segmented mode the reorder window has to hold one segment per decoder, so the pipeline is built once the
+        // read service is configured
+        this.videoReadService = new VideoReadService(selectedFile, executionManager.getBlockingExecutor());
+        this.videoPipeline = new VideoPipeline(executionManager.getExecutor(JobClass.VIDEO), filterList, videoReadService.getQueueDepth(), FrameScheduler.DEFAULT_CHUNK_SIZE);
+        videoReadService.setVideoPipeline(videoPipeline);
+        this.videoWriteService = new VideoWriteService(videoPipeline, executionManager.getBlockingExecutor());
         this.selectedFile = selectedFile;
         this.filterList = filterList;
         this.applyFiltersOnInitialize = applyFiltersOnInitialize;
@@ -63,84 +69,29 @@ public class VideoTabController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         logger.info("Initializing VideoTabController...");
-        tabProgressLabel.textProperty().bind(videoReadService.messageProperty());
-        tabProgressBar.progressProperty().bind(videoReadService.progressProperty());
+        // Frames are encoded while the video is still being read, the pipeline publishes the progress of every stage
+        // as one object, already on the FX thread and at most once per progress interval
+        tabProgressLabel.setText("Waiting for video frames...");
+        videoPipeline.setProgressListener(progress -> {
+            if (videoWriteService.getState() == Worker.State.SUCCEEDED) {
+                return; // A late update must not overwrite the final message
+            }
+            tabProgressLabel.setText(progress.getMessage());
+            tabProgressBar.setProgress(progress.getProgress());
+        });
         videoReadService.stateProperty().addListener((obs, oldState, newState) -> {
             Alert alert = null;
             switch (newState) {
-                case RUNNING:
-                break;
                 case SUCCEEDED:
-                // Get the list of filter services from the video service
-                List<FilterService> filterServices = videoReadService.getValue();
-                totalFrames = filterServices.size();
-                tabProgressLabel.textProperty().unbind();
-                tabProgressLabel.setText("Processing frames...");
-                tabProgressBar.progressProperty().unbind();
-                tabProgressBar.setProgress(0);
-                // Process each filter service and apply the filters to the frames
-                for (FilterService filterService : filterServices) {
-                    filterService.setOnSucceeded(ev -> {
-                        // SUCCESSFUL
-                        BufferedImage filteredImage = filterService.getValue();
-                        Mat filteredMat = bufferedImageToMat(filteredImage);
-                        lockMatFramesMap.lock();
-                        try {
-                            matFramesMap.put(filterService.getId(), filteredMat);
-                            // Update the progress bar and label in percent
-                            int framePercent = (int) ((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames * 100);
-                            tabProgressLabel.setText("Processed frames: " + framePercent + "%");
-                            tabProgressBar.setProgress((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames);
-                            logger.info("Frame " + filterService.getId() + " processed successfully.");
-                        } finally {
-                            lockMatFramesMap.unlock();
-                            if (isVideoProcessingFinished()) {
-                                logger.info("All frames processed.");
-                                saveProcessedFrames(); // Save the processed frames to a new video file
-                            }
-                        }
-                    });
-                    filterService.setOnFailed(ev -> {
-                        // FAILED
-                        logger.error("Error processing frame " + filterService.getId() + ": " + filterService.getException().getMessage());
-                        lockMatFramesMap.lock();
-                        try {
-                            matFramesFailedMap.put(filterService.getId(), null);
-                            // Update the progress bar and label in percent
-                            int framePercent = (int) ((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames * 100);
-                            tabProgressLabel.setText("Processed frames: " + framePercent + "%");
-                            tabProgressBar.setProgress((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames);
-                        } finally {
-                            lockMatFramesMap.unlock();
-                            if (isVideoProcessingFinished()) {
-                                logger.info("All frames processed.");
-                                saveProcessedFrames(); // Save the processed frames to a new video file
-                            }
-                        }
-                    });
-                    filterService.setOnCancelled(ev -> {
-                        // CANCELLED
-                        logger.warn("Frame " + filterService.getId() + " processing was cancelled.");
-                        lockMatFramesMap.lock();
-                        try {
-                            matFramesFailedMap.put(filterService.getId(), null);
-                            // Update the progress bar and label in percent
-                            int framePercent = (int) ((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames * 100);
-                            tabProgressLabel.setText("Processed frames: " + framePercent + "%");
-                            tabProgressBar.setProgress((double) (matFramesMap.size() + matFramesFailedMap.size()) / totalFrames);
-                        } finally {
-                            lockMatFramesMap.unlock();
-                            if (isVideoProcessingFinished()) {
-                                logger.info("All frames processed.");
-                                saveProcessedFrames(); // Save the processed frames to a new video file
-                            }
-                        }
-                    });
-                    filterService.start();
-                }
+                logger.info(videoReadService.getValue() + " frames read from " + selectedFile.getName() + ".");
                 break;
                 case FAILED:
                 logger.error("Video processing failed: " + videoReadService.getException().getMessage());
+                videoWriteService.cancel();
+                // A failure while saving stops the pipeline and is already reported by the write service
+                if (videoReadService.getException() instanceof CancellationException) {
+                    break;
+                }
                 alert = new Alert(Alert.AlertType.ERROR, "Error applying filters: " + videoReadService.getException().getMessage());
                 alert.showAndWait();
                 break;
@@ -150,6 +101,7 @@ public class VideoTabController implements Initializable {
                     return;
                 }
                 logger.warn("Video processing was cancelled.");
+                videoWriteService.cancel();
                 alert = new Alert(Alert.AlertType.WARNING, "Video processing was cancelled.");
                 alert.showAndWait();
                 break;
@@ -157,36 +109,12 @@ public class VideoTabController implements Initializable {
                 break;
             }
         });
-        // Apply filters if the flag is set to true
-        if (applyFiltersOnInitialize) {
-            logger.info("Applying filters on initialize...");
-            videoReadService.start();
-        } else {
-            logger.info("Filters will not be processed (Start on demand feature not implemented yet).");
-        }
-    }
-
-    private Boolean isVideoProcessingFinished() {
-        // Check if the video processing is finished
-        return matFramesMap.size() + matFramesFailedMap.size() == totalFrames;
-    }
-
-    private void saveProcessedFrames() {
-        logger.warn(matFramesMap.size() + " frames processed successfully, " + matFramesFailedMap.size() + " frames failed to process.");
-        logger.info("Save processed frames to a new video file...");
-        // Save the processed frames to a new video file
-        VideoWriteService videoWriteService = new VideoWriteService(videoReadService, matFramesMap, matFramesFailedMap);
-        videoWriteService.setExecutor(videoReadService.getExecutor());
-        tabProgressLabel.textProperty().bind(videoWriteService.messageProperty());
-        tabProgressBar.progressProperty().bind(videoWriteService.progressProperty());
         videoWriteService.setOnSucceeded(ev -> {
             // SUCCESSFUL
             String outputPath = videoWriteService.getValue();
-            tabProgressLabel.textProperty().unbind();
             tabProgressLabel.setText("Video saved successfully!\nPath: " + outputPath);
-            tabProgressBar.progressProperty().unbind();
             tabProgressBar.setProgress(1.0);
-            logger.info("Video saved successfully! Path: " + outputPath);
+            logger.info("Video saved successfully! Path: " + outputPath + " (" + videoPipeline.getFrameScheduler().getProgress() + ")");
             createReport(); // Create the report after saving the video
             Alert alert = new Alert(Alert.AlertType.INFORMATION, "Video saved successfully!\nPath: " + outputPath);
             alert.showAndWait();
@@ -194,20 +122,32 @@ public class VideoTabController implements Initializable {
         videoWriteService.setOnFailed(ev -> {
             // FAILED
             logger.error("Error saving video: " + videoWriteService.getException().getMessage());
-            Alert alert = new Alert(Alert.AlertType.ERROR, "Error saving video: " + videoWriteService.getException().getMessage());
-            alert.showAndWait();
+            videoReadService.cancel();
+            videoPipeline.close(); // Also if the task was stopped before it started
+            // A failure while reading stops the pipeline and is already reported by the read service
+            if (!(videoWriteService.getException() instanceof CancellationException)) {
+                Alert alert = new Alert(Alert.AlertType.ERROR, "Error saving video: " + videoWriteService.getException().getMessage());
+                alert.showAndWait();
+            }
         });
         videoWriteService.setOnCancelled(ev -> {
             // CANCELLED
             logger.warn("Video saving was cancelled.");
-            Alert alert = new Alert(Alert.AlertType.WARNING, "Video saving was cancelled.");
-            alert.showAndWait();
+            videoReadService.cancel();
+            videoPipeline.close();
         });
-        videoWriteService.start();
+        // Apply filters if the flag is set to true
+        if (applyFiltersOnInitialize) {
+            logger.info("Applying filters on initialize...");
+            videoReadService.start();
+            videoWriteService.start();
+        } else {
+            logger.info("Filters will not be processed (Start on demand feature not implemented yet).");
+        }
     }
 
     private void createReport() {
-        // Generate the report in a new thread
+        // Generate the report on an I/O thread
         ReportTask reportTask = new ReportTask(reportManager, LocalDateTime.now(), selectedFile.getAbsolutePath(), filterList);
         reportTask.stateProperty().addListener((obs, oldState, newState) -> {
             Alert alert = null;
@@ -226,7 +166,7 @@ public class VideoTabController implements Initializable {
                 break;
             }
         });
-        new Thread(reportTask).start();
+        executionManager.getIoExecutor().execute(reportTask);
     }
 
     public static BufferedImage matToBufferedImage(Mat mat) {
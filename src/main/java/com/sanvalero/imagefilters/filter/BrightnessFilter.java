@@ -32,4 +32,30 @@ public class BrightnessFilter extends Filter {
         return new Color(red, green, blue);
     }
 
+    @Override
+    public int apply(int argb) {
+        int red = clamp(((argb >> 16) & 0xFF) + brightnessLevel);
+        int green = clamp(((argb >> 8) & 0xFF) + brightnessLevel);
+        int blue = clamp((argb & 0xFF) + brightnessLevel);
+        return (argb & 0xFF000000) | (red << 16) | (green << 8) | blue;
+    }
+
+    @Override
+    public void apply(byte[] bgrPixels, int offset, int length) {
+        int end = offset + length * 3;
+        int level = brightnessLevel;
+        for (int i = offset; i < end; i++) {
+            bgrPixels[i] = (byte) clamp((bgrPixels[i] & 0xFF) + level);
+        }
+    }
+
+    @Override
+    public PointOperation getPointOperation() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = clamp(i + brightnessLevel);
+        }
+        return PointOperation.lookupTable(table);
+    }
+
 }
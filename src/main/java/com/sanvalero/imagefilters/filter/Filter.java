@@ -15,6 +15,47 @@ public abstract class Filter {
 
     public abstract Color apply(Color color); // Abstract method to apply the filter
 
+    // Apply the filter to a packed ARGB pixel (0xAARRGGBB).
+    // Built-in filters override this method with an allocation-free kernel. Filters that only
+    // implement apply(Color) keep working through this adapter, which preserves the alpha channel.
+    public int apply(int argb) {
+        Color result = apply(new Color(argb, true));
+        return (argb & 0xFF000000) | (result.getRGB() & 0x00FFFFFF);
+    }
+
+    // Apply the filter in place to a span of packed ARGB pixels
+    public void apply(int[] pixels, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            pixels[i] = apply(pixels[i]);
+        }
+    }
+
+    // Apply the filter in place to a span of 3 byte BGR pixels (length is given in pixels)
+    public void apply(byte[] bgrPixels, int offset, int length) {
+        int end = offset + length * 3;
+        for (int i = offset; i < end; i += 3) {
+            int argb = 0xFF000000
+                    | ((bgrPixels[i + 2] & 0xFF) << 16)
+                    | ((bgrPixels[i + 1] & 0xFF) << 8)
+                    | (bgrPixels[i] & 0xFF);
+            int result = apply(argb);
+            bgrPixels[i] = (byte) result;
+            bgrPixels[i + 1] = (byte) (result >> 8);
+            bgrPixels[i + 2] = (byte) (result >> 16);
+        }
+    }
+
+    // Describe the filter as a point operation so it can be fused with its neighbours (null if it cannot)
+    public PointOperation getPointOperation() {
+        return null;
+    }
+
+    // Clamp a channel value to the 0-255 range
+    protected static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,93 @@
+package com.sanvalero.imagefilters.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FilterChain {
+    // This class compiles a list of filters into an equivalent and cheaper one
+    // Consecutive point filters are fused into a single FusedPointFilter; any other filter breaks the segment
+
+    private FilterChain() {
+    }
+
+    public static List<Filter> compile(List<Filter> filters) {
+        List<Filter> compiled = new ArrayList<>();
+        Segment segment = new Segment();
+        for (Filter filter : filters) {
+            PointOperation operation = filter.getPointOperation();
+            if (operation == null) {
+                segment.flushTo(compiled);
+                compiled.add(filter);
+            } else if (!segment.append(filter, operation)) {
+                // Two color matrices cannot be merged exactly because of the truncation, so a new segment starts
+                segment.flushTo(compiled);
+                segment.append(filter, operation);
+            }
+        }
+        segment.flushTo(compiled);
+        return compiled;
+    }
+
+    private static class Segment {
+        private final List<Filter> filters = new ArrayList<>();
+        private int[][] preTables;
+        private double[][] colorMatrix;
+        private int[][] postTables;
+
+        Segment() {
+            reset();
+        }
+
+        boolean append(Filter filter, PointOperation operation) {
+            if (operation.isLookupTable()) {
+                postTables = compose(postTables, operation.getLookupTables());
+            } else if (colorMatrix == null) {
+                // Everything applied so far runs before the matrix
+                preTables = postTables;
+                colorMatrix = operation.getColorMatrix();
+                postTables = identityTables();
+            } else {
+                return false;
+            }
+            filters.add(filter);
+            return true;
+        }
+
+        void flushTo(List<Filter> compiled) {
+            if (filters.size() == 1) {
+                compiled.add(filters.get(0)); // Nothing to fuse
+            } else if (filters.size() > 1) {
+                compiled.add(new FusedPointFilter(new ArrayList<>(filters), preTables, colorMatrix, postTables));
+            }
+            reset();
+        }
+
+        private void reset() {
+            filters.clear();
+            preTables = identityTables();
+            colorMatrix = null;
+            postTables = identityTables();
+        }
+
+        // Tables that apply first the given tables and then the next ones
+        private static int[][] compose(int[][] tables, int[][] nextTables) {
+            int[][] composed = new int[3][256];
+            for (int channel = 0; channel < 3; channel++) {
+                for (int value = 0; value < 256; value++) {
+                    composed[channel][value] = nextTables[channel][tables[channel][value]];
+                }
+            }
+            return composed;
+        }
+
+        private static int[][] identityTables() {
+            int[][] tables = new int[3][256];
+            for (int channel = 0; channel < 3; channel++) {
+                for (int value = 0; value < 256; value++) {
+                    tables[channel][value] = value;
+                }
+            }
+            return tables;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.sanvalero.imagefilters.filter;
+
+import java.util.Arrays;
+
+public class FilterDescriptor {
+    // This class describes a filter by its type and parameters, so it can be saved in the history and created again
+    // Its text form is the name of the filter followed by its parameters, e.g. Grayscale or Brightness(20)
+    public enum Type {
+        GRAYSCALE(1, "Grayscale"),
+        INVERT_COLORS(2, "Invert Colors"),
+        BRIGHTNESS(3, "Brightness"),
+        OTHER(0, null); // A filter this version does not know, only its name is kept
+
+        private final int code; // Saved in binary histories, it must not change
+        private final String filterName;
+
+        Type(int code, String filterName) {
+            this.code = code;
+            this.filterName = filterName;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public static Type fromCode(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return OTHER;
+        }
+
+        public static Type fromName(String name) {
+            for (Type type : values()) {
+                if (name.equals(type.filterName)) {
+                    return type;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private final Type type;
+    private final String name;
+    private final int[] parameters;
+
+    public FilterDescriptor(Type type, String name, int... parameters) {
+        this.type = type;
+        this.name = type == Type.OTHER ? name : type.filterName;
+        this.parameters = parameters.clone();
+    }
+
+    // Parse the text form; entries written before the parameters were saved only have the name
+    public static FilterDescriptor parse(String text) {
+        String name = text.trim();
+        int[] parameters = new int[0];
+        int open = name.lastIndexOf('(');
+        if (open > 0 && name.endsWith(")")) {
+            try {
+                String[] values = name.substring(open + 1, name.length() - 1).split(",");
+                int[] parsed = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    parsed[i] = Integer.parseInt(values[i].trim());
+                }
+                parameters = parsed;
+                name = name.substring(0, open);
+            } catch (NumberFormatException e) {
+                // Part of the name of an unknown filter
+            }
+        }
+        return new FilterDescriptor(Type.fromName(name), name, parameters);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int[] getParameters() {
+        return parameters.clone();
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public int getParameter(int index) {
+        return parameters[index];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof FilterDescriptor)) {
+            return false;
+        }
+        FilterDescriptor descriptor = (FilterDescriptor) other;
+        return type == descriptor.type && name.equals(descriptor.name) && Arrays.equals(parameters, descriptor.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + Arrays.hashCode(parameters);
+    }
+
+    @Override
+    public String toString() {
+        if (parameters.length == 0) {
+            return name;
+        }
+        StringBuilder text = new StringBuilder(name).append('(');
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(parameters[i]);
+        }
+        return text.append(')').toString();
+    }
+}
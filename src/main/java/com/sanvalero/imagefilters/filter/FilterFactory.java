@@ -0,0 +1,60 @@
+package com.sanvalero.imagefilters.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FilterFactory {
+    // This class is responsible for converting filters to descriptors and back
+
+    private FilterFactory() {
+    }
+
+    public static FilterDescriptor describe(Filter filter) {
+        if (filter instanceof GrayscaleFilter) {
+            return new FilterDescriptor(FilterDescriptor.Type.GRAYSCALE, null);
+        } else if (filter instanceof InvertColorsFilter) {
+            return new FilterDescriptor(FilterDescriptor.Type.INVERT_COLORS, null);
+        } else if (filter instanceof BrightnessFilter) {
+            return new FilterDescriptor(FilterDescriptor.Type.BRIGHTNESS, null, ((BrightnessFilter) filter).getBrightnessLevel());
+        }
+        return new FilterDescriptor(FilterDescriptor.Type.OTHER, filter.getName());
+    }
+
+    // Create the filter described; a missing parameter takes the default value of the filter
+    public static Filter create(FilterDescriptor descriptor) {
+        switch (descriptor.getType()) {
+            case GRAYSCALE:
+                return new GrayscaleFilter();
+            case INVERT_COLORS:
+                return new InvertColorsFilter();
+            case BRIGHTNESS:
+                return descriptor.getParameterCount() > 0 ? new BrightnessFilter(descriptor.getParameter(0)) : new BrightnessFilter();
+            case OTHER:
+            default:
+                throw new IllegalArgumentException("Unknown filter: " + descriptor.getName());
+        }
+    }
+
+    // Create the filters of a chain written as their text forms separated by commas, e.g. Grayscale,Brightness(30)
+    public static List<Filter> parseChain(String text) {
+        List<Filter> filters = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ',';
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                // Commas inside the parentheses separate the parameters of a filter
+                String filter = text.substring(start, i).trim();
+                if (!filter.isEmpty()) {
+                    filters.add(create(FilterDescriptor.parse(filter)));
+                }
+                start = i + 1;
+            }
+        }
+        return filters;
+    }
+}
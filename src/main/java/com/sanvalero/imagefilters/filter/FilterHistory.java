@@ -0,0 +1,306 @@
+package com.sanvalero.imagefilters.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.scene.image.Image;
+
+public class FilterHistory {
+    // This class is responsible for the undo/redo steps of an image tab, within a memory budget
+    // The result of a step is the original of the next one, so both steps share the same ImageSnapshot. The images of
+    // the current step stay in memory. When the tab, or all the tabs together, use more than their budget, the steps
+    // farthest from the current one are compressed first, and then their compressed copies are moved to disk
+    // Budgets: -Dimagefilters.undo.tabMB=<MB> (256) and -Dimagefilters.undo.globalMB=<MB> (1024); the files are written
+    // to a directory of this run inside -Dimagefilters.undo.dir (imagefilters-undo in the temporary directory), which is
+    // deleted when the application stops. Directories left by runs that did not stop cleanly are deleted on the next one
+    private static final Logger logger = LoggerFactory.getLogger(FilterHistory.class);
+
+    public static final long TAB_BUDGET_BYTES = Long.getLong("imagefilters.undo.tabMB", 256L) * 1024 * 1024;
+    public static final long GLOBAL_BUDGET_BYTES = Long.getLong("imagefilters.undo.globalMB", 1024L) * 1024 * 1024;
+    public static final File SPILL_DIRECTORY = new File(System.getProperty("imagefilters.undo.dir",
+            new File(System.getProperty("java.io.tmpdir"), "imagefilters-undo").getPath()));
+
+    private static final Set<FilterHistory> histories = ConcurrentHashMap.newKeySet(); // Open histories, for the global budget
+    private static final AtomicBoolean trimScheduled = new AtomicBoolean(false);
+    private static final Object trimLock = new Object();
+    private static File sessionDirectory; // Created on the first spill
+
+    private final List<FilterStep> steps = new ArrayList<>();
+    private int currentIndex = -1;
+    private final Executor executor; // Runs the compression and the writes to disk
+    private boolean closed = false;
+
+    public FilterHistory(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Add a step after the current one, dropping the steps that could be redone
+    public synchronized FilterStep add(Image originalImage, Image resultImage) {
+        if (closed) {
+            throw new IllegalStateException("Filter history is closed.");
+        }
+        histories.add(this); // Counted in the global budget once it has images
+        clearRedoSteps();
+        ImageSnapshot original;
+        if (currentIndex >= 0 && steps.get(currentIndex).getResultSnapshot().holds(originalImage)) {
+            original = steps.get(currentIndex).getResultSnapshot(); // Filters applied to the previous result
+        } else {
+            original = new ImageSnapshot(originalImage);
+        }
+        FilterStep step = new FilterStep(original, new ImageSnapshot(resultImage));
+        steps.add(step);
+        currentIndex = steps.size() - 1;
+        scheduleTrim();
+        return step;
+    }
+
+    public synchronized boolean canUndo() {
+        return currentIndex > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return currentIndex < steps.size() - 1;
+    }
+
+    // Move to the previous step, null if there is none
+    public synchronized FilterStep undo() {
+        if (!canUndo()) {
+            return null;
+        }
+        currentIndex--;
+        scheduleTrim();
+        return steps.get(currentIndex);
+    }
+
+    // Move to the next step, null if there is none
+    public synchronized FilterStep redo() {
+        if (!canRedo()) {
+            return null;
+        }
+        currentIndex++;
+        scheduleTrim();
+        return steps.get(currentIndex);
+    }
+
+    // The step shown in the tab, null if there is none
+    public synchronized FilterStep getCurrentStep() {
+        return currentIndex >= 0 ? steps.get(currentIndex) : null;
+    }
+
+    public synchronized int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public synchronized int size() {
+        return steps.size();
+    }
+
+    // Memory used by the images of the steps, each shared image counted once
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (ImageSnapshot snapshot : getSnapshots()) {
+            bytes += snapshot.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    // Free every image and delete the files of the history
+    public void close() {
+        List<ImageSnapshot> snapshots;
+        synchronized (this) {
+            closed = true;
+            snapshots = getSnapshots();
+            steps.clear();
+            currentIndex = -1;
+        }
+        histories.remove(this);
+        for (ImageSnapshot snapshot : snapshots) {
+            snapshot.dispose();
+        }
+    }
+
+    private void clearRedoSteps() {
+        if (!canRedo()) {
+            return;
+        }
+        List<FilterStep> removed = steps.subList(currentIndex + 1, steps.size());
+        // The original of the first removed step is the result of the current one
+        ImageSnapshot kept = currentIndex >= 0 ? steps.get(currentIndex).getResultSnapshot() : null;
+        for (FilterStep step : removed) {
+            if (step.getOriginalSnapshot() != kept) {
+                step.getOriginalSnapshot().dispose();
+            }
+            step.getResultSnapshot().dispose();
+        }
+        removed.clear();
+    }
+
+    // Distinct snapshots in step order: the original of the first step and then the result of every step
+    private synchronized List<ImageSnapshot> getSnapshots() {
+        Map<ImageSnapshot, Boolean> snapshots = new IdentityHashMap<>();
+        List<ImageSnapshot> ordered = new ArrayList<>();
+        for (FilterStep step : steps) {
+            for (ImageSnapshot snapshot : List.of(step.getOriginalSnapshot(), step.getResultSnapshot())) {
+                if (snapshots.put(snapshot, Boolean.TRUE) == null) {
+                    ordered.add(snapshot);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    // Snapshots that can be compressed or spilled, the farthest from the current step first
+    private synchronized List<ImageSnapshot> getTrimCandidates() {
+        if (closed || currentIndex < 0) {
+            return Collections.emptyList();
+        }
+        FilterStep current = steps.get(currentIndex);
+        List<ImageSnapshot> before = new ArrayList<>();
+        List<ImageSnapshot> after = new ArrayList<>();
+        for (ImageSnapshot snapshot : getSnapshots()) {
+            if (snapshot == current.getOriginalSnapshot()) {
+                continue;
+            }
+            if (snapshot == current.getResultSnapshot()) {
+                before = after; // Everything up to here is before the current step
+                after = new ArrayList<>();
+                continue;
+            }
+            after.add(snapshot);
+        }
+        // Take one from each side in turn, starting by the ends of the list
+        List<ImageSnapshot> candidates = new ArrayList<>(before.size() + after.size());
+        int first = 0;
+        int last = after.size() - 1;
+        while (first < before.size() || last >= 0) {
+            if (before.size() - first >= last + 1) {
+                candidates.add(before.get(first++));
+            } else {
+                candidates.add(after.get(last--));
+            }
+        }
+        return candidates;
+    }
+
+    // Compress the farthest image in memory or, if all of them are compressed, spill the farthest compressed one
+    private boolean shrinkOnce() {
+        List<ImageSnapshot> candidates = getTrimCandidates();
+        try {
+            for (ImageSnapshot snapshot : candidates) {
+                if (snapshot.isInMemory() && snapshot.release()) {
+                    return true;
+                }
+            }
+            for (ImageSnapshot snapshot : candidates) {
+                if (snapshot.isCompressed() && snapshot.spill(getSessionDirectory())) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error reducing the memory of the undo history: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static synchronized File getSessionDirectory() throws IOException {
+        if (sessionDirectory == null) {
+            Files.createDirectories(SPILL_DIRECTORY.toPath());
+            deleteStaleSessions();
+            File directory = Files.createTempDirectory(SPILL_DIRECTORY.toPath(),
+                    "session-" + ProcessHandle.current().pid() + "-").toFile();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteDirectory(directory), "imagefilters-undo-cleanup"));
+            sessionDirectory = directory;
+        }
+        return sessionDirectory;
+    }
+
+    // Delete the directories of runs whose process is gone
+    private static void deleteStaleSessions() {
+        File[] directories = SPILL_DIRECTORY.listFiles((dir, name) -> name.startsWith("session-"));
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            String[] parts = directory.getName().split("-");
+            try {
+                if (parts.length > 1 && ProcessHandle.of(Long.parseLong(parts[1])).isEmpty()) {
+                    deleteDirectory(directory);
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        if (!directory.delete()) {
+            logger.warn("Could not delete the undo directory: " + directory.getAbsolutePath());
+        }
+    }
+
+    private void scheduleTrim() {
+        if (!trimScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(FilterHistory::trim);
+        } catch (RejectedExecutionException e) {
+            trimScheduled.set(false); // Shutting down, the memory is freed with the application
+        }
+    }
+
+    // Bring every history under the tab budget and all of them under the global budget
+    private static void trim() {
+        synchronized (trimLock) {
+            trimScheduled.set(false); // Changes made from now on schedule another pass
+            List<FilterHistory> open = new ArrayList<>(histories);
+            for (FilterHistory history : open) {
+                while (history.getMemoryBytes() > TAB_BUDGET_BYTES && history.shrinkOnce()) {
+                    // Keep shrinking the tab
+                }
+            }
+            long total = 0;
+            for (FilterHistory history : open) {
+                total += history.getMemoryBytes();
+            }
+            // The tab that uses the most memory gives it back first
+            while (total > GLOBAL_BUDGET_BYTES && !open.isEmpty()) {
+                FilterHistory largest = open.get(0);
+                long largestBytes = largest.getMemoryBytes();
+                for (FilterHistory history : open) {
+                    long bytes = history.getMemoryBytes();
+                    if (bytes > largestBytes) {
+                        largest = history;
+                        largestBytes = bytes;
+                    }
+                }
+                if (largest.shrinkOnce()) {
+                    total += largest.getMemoryBytes() - largestBytes;
+                } else {
+                    open.remove(largest);
+                }
+            }
+            logger.debug("Undo history memory: " + total / (1024 * 1024) + " MB in " + histories.size() + " tabs.");
+        }
+    }
+}
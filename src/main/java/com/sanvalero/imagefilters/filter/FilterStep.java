@@ -1,21 +1,33 @@
 package com.sanvalero.imagefilters.filter;
 
+import java.io.IOException;
+
 import javafx.scene.image.Image;
 
 public class FilterStep {
-    private Image originalImage;
-    private Image resultImage;
+    // The original of a step is usually the same snapshot as the result of the step before it
+    private ImageSnapshot originalImage;
+    private ImageSnapshot resultImage;
 
-    public FilterStep(Image originalImage, Image resultImage) {
+    public FilterStep(ImageSnapshot originalImage, ImageSnapshot resultImage) {
         this.originalImage = originalImage;
         this.resultImage = resultImage;
     }
 
-    public Image getOriginalImage() {
+    // Decoding a compressed or spilled image can take a while, call it outside the FX thread
+    public Image getOriginalImage() throws IOException {
+        return originalImage.getImage();
+    }
+
+    public Image getResultImage() throws IOException {
+        return resultImage.getImage();
+    }
+
+    public ImageSnapshot getOriginalSnapshot() {
         return originalImage;
     }
 
-    public Image getResultImage() {
+    public ImageSnapshot getResultSnapshot() {
         return resultImage;
     }
 }
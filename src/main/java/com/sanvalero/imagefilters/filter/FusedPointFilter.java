@@ -0,0 +1,77 @@
+package com.sanvalero.imagefilters.filter;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+public class FusedPointFilter extends Filter {
+    // This class applies several consecutive point filters as one: lookup tables, an optional color matrix
+    // and lookup tables again, so a pixel costs one table lookup per channel instead of one call per filter
+    private final int[] preRed;
+    private final int[] preGreen;
+    private final int[] preBlue;
+    private final double[][] colorMatrix; // Null when the fused filters do not mix channels
+    private final boolean grayMatrix; // All the rows of the matrix are equal, so a single value is computed
+    private final int[] postRed;
+    private final int[] postGreen;
+    private final int[] postBlue;
+
+    FusedPointFilter(List<Filter> fusedFilters, int[][] preTables, double[][] colorMatrix, int[][] postTables) {
+        super("Fused " + fusedFilters);
+        this.preRed = preTables[0];
+        this.preGreen = preTables[1];
+        this.preBlue = preTables[2];
+        this.colorMatrix = colorMatrix;
+        this.grayMatrix = colorMatrix != null
+                && Arrays.equals(colorMatrix[0], colorMatrix[1])
+                && Arrays.equals(colorMatrix[1], colorMatrix[2]);
+        this.postRed = postTables[0];
+        this.postGreen = postTables[1];
+        this.postBlue = postTables[2];
+    }
+
+    @Override
+    public Color apply(Color color) {
+        return new Color(apply(color.getRGB()), true);
+    }
+
+    @Override
+    public int apply(int argb) {
+        int red = preRed[(argb >> 16) & 0xFF];
+        int green = preGreen[(argb >> 8) & 0xFF];
+        int blue = preBlue[argb & 0xFF];
+        if (colorMatrix != null) {
+            int mixedRed = mix(colorMatrix[0], red, green, blue);
+            if (grayMatrix) {
+                red = mixedRed;
+                green = mixedRed;
+                blue = mixedRed;
+            } else {
+                int mixedGreen = mix(colorMatrix[1], red, green, blue);
+                blue = mix(colorMatrix[2], red, green, blue);
+                red = mixedRed;
+                green = mixedGreen;
+            }
+        }
+        return (argb & 0xFF000000) | (postRed[red] << 16) | (postGreen[green] << 8) | postBlue[blue];
+    }
+
+    @Override
+    public void apply(byte[] bgrPixels, int offset, int length) {
+        if (colorMatrix != null) {
+            super.apply(bgrPixels, offset, length);
+            return;
+        }
+        // Without a matrix the pre tables are the identity, so only the post tables are needed
+        int end = offset + length * 3;
+        for (int i = offset; i < end; i += 3) {
+            bgrPixels[i] = (byte) postBlue[bgrPixels[i] & 0xFF];
+            bgrPixels[i + 1] = (byte) postGreen[bgrPixels[i + 1] & 0xFF];
+            bgrPixels[i + 2] = (byte) postRed[bgrPixels[i + 2] & 0xFF];
+        }
+    }
+
+    private static int mix(double[] row, int red, int green, int blue) {
+        return clamp((int) (row[0] * red + row[1] * green + row[2] * blue));
+    }
+}
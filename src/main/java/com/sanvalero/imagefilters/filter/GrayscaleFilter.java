@@ -14,4 +14,27 @@ public class GrayscaleFilter extends Filter {
         return new Color(gray, gray, gray);
     }
 
+    @Override
+    public int apply(int argb) {
+        int gray = (int) (0.3 * ((argb >> 16) & 0xFF) + 0.59 * ((argb >> 8) & 0xFF) + 0.11 * (argb & 0xFF));
+        return (argb & 0xFF000000) | (gray << 16) | (gray << 8) | gray;
+    }
+
+    @Override
+    public void apply(byte[] bgrPixels, int offset, int length) {
+        int end = offset + length * 3;
+        for (int i = offset; i < end; i += 3) {
+            byte gray = (byte) (int) (0.3 * (bgrPixels[i + 2] & 0xFF) + 0.59 * (bgrPixels[i + 1] & 0xFF) + 0.11 * (bgrPixels[i] & 0xFF));
+            bgrPixels[i] = gray;
+            bgrPixels[i + 1] = gray;
+            bgrPixels[i + 2] = gray;
+        }
+    }
+
+    @Override
+    public PointOperation getPointOperation() {
+        double[] weights = {0.3, 0.59, 0.11};
+        return PointOperation.colorMatrix(new double[][] {weights, weights, weights});
+    }
+
 }
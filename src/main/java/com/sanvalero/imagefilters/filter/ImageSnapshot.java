@@ -0,0 +1,178 @@
+package com.sanvalero.imagefilters.filter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+public class ImageSnapshot {
+    // This class keeps one image of the undo history: as a JavaFX image, compressed in memory or in a file on disk
+    // The compression works like a fast PNG: each row stores the difference of every byte with the same byte of the
+    // previous pixel, and the rows are deflated at the fastest level. It is lossless for opaque images
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int width;
+    private final int height;
+    private Image image; // Strong reference while the image is in memory
+    private WeakReference<Image> lastImage; // The image last shown, reused if the view still holds it
+    private byte[] compressedData;
+    private File spillFile;
+    private boolean disposed = false;
+
+    public ImageSnapshot(Image image) {
+        this.width = (int) image.getWidth();
+        this.height = (int) image.getHeight();
+        this.image = image;
+        this.lastImage = new WeakReference<>(image);
+    }
+
+    // Memory used by the snapshot: the pixels of the image it holds and its compressed copy
+    public synchronized long getMemoryBytes() {
+        long bytes = compressedData != null ? compressedData.length : 0;
+        if (image != null) {
+            bytes += (long) width * height * BYTES_PER_PIXEL;
+        }
+        return bytes;
+    }
+
+    public synchronized boolean isInMemory() {
+        return image != null;
+    }
+
+    public synchronized boolean isCompressed() {
+        return compressedData != null;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    // True if this snapshot was taken from the given image, so a step can share it instead of keeping a copy
+    public synchronized boolean holds(Image candidate) {
+        return candidate != null && (candidate == image || candidate == lastImage.get());
+    }
+
+    // Get the image, decoding it if it was compressed or spilled; it stays in memory until it is released again
+    public synchronized Image getImage() throws IOException {
+        if (disposed) {
+            throw new IOException("Image snapshot was discarded.");
+        }
+        if (image == null) {
+            image = lastImage.get();
+        }
+        if (image == null) {
+            if (compressedData != null) {
+                image = decode(new ByteArrayInputStream(compressedData));
+            } else {
+                try (InputStream input = new BufferedInputStream(Files.newInputStream(spillFile.toPath()))) {
+                    image = decode(input);
+                }
+            }
+            lastImage = new WeakReference<>(image);
+        }
+        return image;
+    }
+
+    // Drop the JavaFX image, compressing it first if there is no other copy; returns false if there was nothing to drop
+    public synchronized boolean release() throws IOException {
+        if (disposed || image == null) {
+            return false;
+        }
+        if (compressedData == null && spillFile == null) {
+            compressedData = encode(image);
+        }
+        image = null;
+        return true;
+    }
+
+    // Move the compressed copy to a file in the directory; returns false if there was nothing in memory to spill
+    public synchronized boolean spill(File directory) throws IOException {
+        if (disposed || compressedData == null) {
+            return false;
+        }
+        if (spillFile == null) {
+            Files.createDirectories(directory.toPath());
+            File file = File.createTempFile("step-", ".bin", directory);
+            try {
+                Files.write(file.toPath(), compressedData);
+            } catch (IOException e) {
+                Files.deleteIfExists(file.toPath());
+                throw e;
+            }
+            spillFile = file;
+        }
+        compressedData = null;
+        return true;
+    }
+
+    // Free everything the snapshot holds, it cannot be used anymore
+    public synchronized void dispose() {
+        disposed = true;
+        image = null;
+        lastImage.clear();
+        compressedData = null;
+        if (spillFile != null) {
+            spillFile.delete(); // If it fails, the file goes with the session directory when the application stops
+            spillFile = null;
+        }
+    }
+
+    private byte[] encode(Image source) throws IOException {
+        PixelReader reader = source.getPixelReader();
+        if (reader == null) {
+            throw new IOException("Image pixels cannot be read.");
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater, 64 * 1024)) {
+            byte[] row = new byte[width * BYTES_PER_PIXEL];
+            for (int y = 0; y < height; y++) {
+                reader.getPixels(0, y, width, 1, PixelFormat.getByteBgraInstance(), row, 0, row.length);
+                // Backward, so every byte is compared with the original value of the previous pixel
+                for (int i = row.length - 1; i >= BYTES_PER_PIXEL; i--) {
+                    row[i] -= row[i - BYTES_PER_PIXEL];
+                }
+                deflated.write(row);
+            }
+        } finally {
+            deflater.end();
+        }
+        return output.toByteArray();
+    }
+
+    private Image decode(InputStream input) throws IOException {
+        WritableImage decoded = new WritableImage(width, height);
+        PixelWriter writer = decoded.getPixelWriter();
+        Inflater inflater = new Inflater();
+        try (InflaterInputStream inflated = new InflaterInputStream(input, inflater, 64 * 1024)) {
+            byte[] row = new byte[width * BYTES_PER_PIXEL];
+            for (int y = 0; y < height; y++) {
+                if (inflated.readNBytes(row, 0, row.length) != row.length) {
+                    throw new EOFException("Image snapshot is truncated at row " + y + ".");
+                }
+                for (int i = BYTES_PER_PIXEL; i < row.length; i++) {
+                    row[i] += row[i - BYTES_PER_PIXEL];
+                }
+                writer.setPixels(0, y, width, 1, PixelFormat.getByteBgraInstance(), row, 0, row.length);
+            }
+        } finally {
+            inflater.end();
+        }
+        return decoded;
+    }
+}
@@ -13,4 +13,35 @@ public class InvertColorsFilter extends Filter {
         return new Color(255 - color.getRed(), 255 - color.getGreen(), 255 - color.getBlue());
     }
 
+    @Override
+    public int apply(int argb) {
+        // Inverting the three channels is the same as flipping their bits
+        return argb ^ 0x00FFFFFF;
+    }
+
+    @Override
+    public void apply(int[] pixels, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            pixels[i] ^= 0x00FFFFFF;
+        }
+    }
+
+    @Override
+    public void apply(byte[] bgrPixels, int offset, int length) {
+        int end = offset + length * 3;
+        for (int i = offset; i < end; i++) {
+            bgrPixels[i] = (byte) ~bgrPixels[i];
+        }
+    }
+
+    @Override
+    public PointOperation getPointOperation() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = 255 - i;
+        }
+        return PointOperation.lookupTable(table);
+    }
+
 }
@@ -0,0 +1,43 @@
+package com.sanvalero.imagefilters.filter;
+
+public class PointOperation {
+    // This class describes a filter that works on every pixel independently, so it can be fused with others
+    // It is either a lookup table per channel or a 3x3 color matrix whose result is truncated and clamped
+    private final int[][] lookupTables; // Red, green and blue tables with 256 values in the 0-255 range
+    private final double[][] colorMatrix; // Rows produce red, green and blue from (red, green, blue)
+
+    private PointOperation(int[][] lookupTables, double[][] colorMatrix) {
+        this.lookupTables = lookupTables;
+        this.colorMatrix = colorMatrix;
+    }
+
+    public static PointOperation lookupTable(int[] table) {
+        return lookupTable(table, table, table);
+    }
+
+    public static PointOperation lookupTable(int[] red, int[] green, int[] blue) {
+        if (red.length != 256 || green.length != 256 || blue.length != 256) {
+            throw new IllegalArgumentException("Lookup tables must have 256 entries.");
+        }
+        return new PointOperation(new int[][] {red.clone(), green.clone(), blue.clone()}, null);
+    }
+
+    public static PointOperation colorMatrix(double[][] matrix) {
+        if (matrix.length != 3 || matrix[0].length != 3 || matrix[1].length != 3 || matrix[2].length != 3) {
+            throw new IllegalArgumentException("Color matrix must be 3x3.");
+        }
+        return new PointOperation(null, new double[][] {matrix[0].clone(), matrix[1].clone(), matrix[2].clone()});
+    }
+
+    public boolean isLookupTable() {
+        return lookupTables != null;
+    }
+
+    public int[][] getLookupTables() {
+        return lookupTables;
+    }
+
+    public double[][] getColorMatrix() {
+        return colorMatrix;
+    }
+}
@@ -0,0 +1,198 @@
+package com.sanvalero.imagefilters.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+
+class BinaryHistoryCodec implements HistoryCodec {
+    // This class reads and writes the history as binary records: [int length][entry][int length]
+    // The length is also written after the entry so the file can be read backward. An entry is:
+    // - the timestamp: 0, seconds and nanoseconds of the date (without time zone), or 1 and the text if it is not a date
+    // - the number of the path in the PathDictionary of the segment
+    // - the filters: their count and, for each one, its type code (and name if it is unknown) and its parameters
+    // Numbers are written as variable-length integers, so most of them take one or two bytes
+    private static final int TIMESTAMP_DATE = 0;
+    private static final int TIMESTAMP_TEXT = 1;
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+
+    @Override
+    public byte[] encode(HistoryEntry entry, PathDictionary dictionary) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Room for the length, written once the entry is encoded
+        for (int i = 0; i < Integer.BYTES; i++) {
+            output.write(0);
+        }
+        try {
+            LocalDateTime timestamp = LocalDateTime.parse(entry.getTimestamp());
+            // The text form is kept only if it is written back the same way
+            if (!timestamp.toString().equals(entry.getTimestamp())) {
+                throw new DateTimeParseException("Not in ISO format", entry.getTimestamp(), 0);
+            }
+            writeVarInt(output, TIMESTAMP_DATE);
+            writeVarLong(output, zigZag(timestamp.toEpochSecond(ZoneOffset.UTC)));
+            writeVarInt(output, timestamp.getNano());
+        } catch (DateTimeParseException e) {
+            writeVarInt(output, TIMESTAMP_TEXT);
+            writeString(output, entry.getTimestamp());
+        }
+        writeVarInt(output, dictionary.idOf(entry.getPath()));
+        List<FilterDescriptor> filters = entry.getFilterDescriptors();
+        writeVarInt(output, filters.size());
+        for (FilterDescriptor filter : filters) {
+            writeVarInt(output, filter.getType().getCode());
+            if (filter.getType() == FilterDescriptor.Type.OTHER) {
+                writeString(output, filter.getName());
+            }
+            writeVarInt(output, filter.getParameterCount());
+            for (int i = 0; i < filter.getParameterCount(); i++) {
+                writeVarLong(output, zigZag(filter.getParameter(i)));
+            }
+        }
+        int length = output.size() - Integer.BYTES;
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            output.write(length >>> (8 * i));
+        }
+        byte[] bytes = output.toByteArray();
+        ByteBuffer.wrap(bytes).putInt(0, length);
+        return bytes;
+    }
+
+    @Override
+    public HistoryEntry decode(byte[] bytes, int offset, int length, PathDictionary dictionary) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            int entryLength = buffer.getInt();
+            if (entryLength != length - FRAME_BYTES) {
+                throw new IOException("Corrupt history record at " + offset + ": length " + entryLength + " of " + length);
+            }
+            String timestamp;
+            if (readVarInt(buffer) == TIMESTAMP_DATE) {
+                long seconds = unZigZag(readVarLong(buffer));
+                timestamp = LocalDateTime.ofEpochSecond(seconds, readVarInt(buffer), ZoneOffset.UTC).toString();
+            } else {
+                timestamp = readString(buffer);
+            }
+            int pathId = readVarInt(buffer);
+            String path = dictionary.pathOf(pathId);
+            if (path == null) {
+                throw new IOException("Unknown path " + pathId + " in history record at " + offset);
+            }
+            int filterCount = readCount(buffer);
+            List<FilterDescriptor> filters = new ArrayList<>(filterCount);
+            for (int i = 0; i < filterCount; i++) {
+                FilterDescriptor.Type type = FilterDescriptor.Type.fromCode(readVarInt(buffer));
+                String name = type == FilterDescriptor.Type.OTHER ? readString(buffer) : null;
+                int[] parameters = new int[readCount(buffer)];
+                for (int p = 0; p < parameters.length; p++) {
+                    parameters[p] = (int) unZigZag(readVarLong(buffer));
+                }
+                filters.add(new FilterDescriptor(type, name, parameters));
+            }
+            return new HistoryEntry(timestamp, path, filters);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated history record at " + offset);
+        }
+    }
+
+    @Override
+    public int recordLength(ByteBuffer buffer, int position, int limit) {
+        if (limit - position < Integer.BYTES) {
+            return -1;
+        }
+        long length = (long) buffer.getInt(position) + FRAME_BYTES;
+        return length >= FRAME_BYTES && length <= limit - position ? (int) length : -1;
+    }
+
+    @Override
+    public int recordStart(ByteBuffer buffer, int end) {
+        if (end < FRAME_BYTES) {
+            return -1;
+        }
+        long start = end - FRAME_BYTES - (long) buffer.getInt(end - Integer.BYTES);
+        return start >= 0 ? (int) start : -1;
+    }
+
+    @Override
+    public boolean usesDictionary() {
+        return true;
+    }
+
+    @Override
+    public boolean keepsPartialRecords() {
+        return false;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        writeVarLong(output, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Corrupt number in history record");
+        }
+        return (int) value;
+    }
+
+    // Number of items that follow, each of them takes at least one byte
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        int count = readVarInt(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IOException("Corrupt count in history record");
+        }
+        return count;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt number in history record");
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated history record");
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
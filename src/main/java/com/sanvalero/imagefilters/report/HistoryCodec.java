@@ -0,0 +1,23 @@
+package com.sanvalero.imagefilters.report;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+interface HistoryCodec {
+    // Bytes of the entry in a segment; the paths it adds to the dictionary must be saved before the entry
+    byte[] encode(HistoryEntry entry, PathDictionary dictionary);
+
+    HistoryEntry decode(byte[] bytes, int offset, int length, PathDictionary dictionary) throws IOException;
+
+    // Length of the record that starts at position, or -1 if it does not end before limit
+    int recordLength(ByteBuffer buffer, int position, int limit);
+
+    // Start of the record that ends at end, or -1 if it starts before the start of the buffer
+    int recordStart(ByteBuffer buffer, int end);
+
+    // Whether the paths are saved in a dictionary file next to the segment
+    boolean usesDictionary();
+
+    // Whether a record cut at the end of the file by a crash can be read as it is (a line without its separator)
+    boolean keepsPartialRecords();
+}
@@ -0,0 +1,73 @@
+package com.sanvalero.imagefilters.report;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public class HistoryConverter {
+    // This class is responsible for converting a history log between the text and the binary format
+    // The format of each file comes from its extension (.log or .bin); the paths of a binary log are read from and
+    // written to the .dict file with the same name. The index of the new log is built when the history is opened
+    // Usage: HistoryConverter <input> <output>, e.g. logs/history_report.log logs/history_report.bin
+    // Convert the history while the application is closed, and remove the input and its .idx/.pidx/.dict files
+    // if the output replaces it in the logs directory
+
+    private HistoryConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: HistoryConverter <input.log|input.bin> <output.log|output.bin>");
+            System.exit(2);
+        }
+        long entries = convert(new File(args[0]), new File(args[1]));
+        System.out.println(entries + " history entries converted from " + args[0] + " to " + args[1]);
+    }
+
+    // Returns the number of entries written
+    public static long convert(File input, File output) throws IOException {
+        HistoryFormat inputFormat = formatOf(input);
+        HistoryFormat outputFormat = formatOf(output);
+        PathDictionary inputDictionary = null;
+        if (inputFormat.getCodec().usesDictionary()) {
+            File dictionaryFile = dictionaryFileOf(input);
+            inputDictionary = dictionaryFile.exists() ? PathDictionary.read(Files.readAllBytes(dictionaryFile.toPath())) : new PathDictionary();
+        }
+        PathDictionary outputDictionary = outputFormat.getCodec().usesDictionary() ? new PathDictionary() : null;
+        HistoryCodec outputCodec = outputFormat.getCodec();
+        long[] entries = {0};
+        try (FileChannel log = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+             OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(output));
+             OutputStream dictionaryStream = outputDictionary == null ? OutputStream.nullOutputStream()
+                     : new BufferedOutputStream(new FileOutputStream(dictionaryFileOf(output)))) {
+            long end = HistoryStore.scanRecords(log, 0, log.size(), inputFormat.getCodec(), inputDictionary, (position, entry) -> {
+                byte[] record = outputCodec.encode(entry, outputDictionary);
+                if (outputDictionary != null) {
+                    dictionaryStream.write(outputDictionary.takeUnsavedPaths());
+                }
+                outputStream.write(record);
+                entries[0]++;
+            });
+            if (end < log.size()) {
+                System.err.println("Incomplete record at " + end + " of " + input + " skipped.");
+            }
+        }
+        return entries[0];
+    }
+
+    private static HistoryFormat formatOf(File file) {
+        String name = file.getName();
+        int extension = name.lastIndexOf('.');
+        return HistoryFormat.fromExtension(extension < 0 ? "" : name.substring(extension));
+    }
+
+    private static File dictionaryFileOf(File log) {
+        String name = log.getName();
+        return new File(log.getAbsoluteFile().getParentFile(), name.substring(0, name.lastIndexOf('.')) + ".dict");
+    }
+}
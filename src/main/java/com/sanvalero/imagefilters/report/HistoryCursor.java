@@ -0,0 +1,22 @@
+package com.sanvalero.imagefilters.report;
+
+public class HistoryCursor {
+    // This class is the position where the next page of a history query starts
+    // Entries are returned newest first, so the next page continues with the entries before this one
+    private final int segment;
+    private final int entry;
+
+    HistoryCursor(int segment, int entry) {
+        this.segment = segment;
+        this.entry = entry;
+    }
+
+    public int getSegment() {
+        return segment;
+    }
+
+    // Entries of the segment with a lower number are still to be read
+    public int getEntry() {
+        return entry;
+    }
+}
@@ -0,0 +1,81 @@
+package com.sanvalero.imagefilters.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+
+public class HistoryEntry {
+    // This class is one entry of the history report: when an image was filtered, its path and the filters applied
+    // Example text line: 2023-10-01T12:00:00|path/to/image.jpg|Grayscale, Brightness(20)
+    private final String timestamp;
+    private final String path;
+    private final List<FilterDescriptor> filters;
+
+    public HistoryEntry(String timestamp, String path, List<FilterDescriptor> filters) {
+        this.timestamp = timestamp;
+        this.path = path;
+        this.filters = List.copyOf(filters);
+    }
+
+    // The timestamp is before the first separator and the filters after the last one, so a path may contain '|'
+    public static HistoryEntry parse(String line) {
+        int first = line.indexOf('|');
+        if (first < 0) {
+            return new HistoryEntry(line, "", List.of());
+        }
+        int last = line.lastIndexOf('|');
+        if (last == first) {
+            return new HistoryEntry(line.substring(0, first), line.substring(first + 1), List.of());
+        }
+        return new HistoryEntry(line.substring(0, first), line.substring(first + 1, last), parseFilters(line.substring(last + 1)));
+    }
+
+    private static List<FilterDescriptor> parseFilters(String text) {
+        List<FilterDescriptor> filters = new ArrayList<>();
+        if (text.isBlank() || text.equals("-")) {
+            return filters;
+        }
+        for (String filter : text.split(", ")) {
+            filters.add(FilterDescriptor.parse(filter));
+        }
+        return filters;
+    }
+
+    public String toLine() {
+        return timestamp + "|" + path + "|" + getFilters();
+    }
+
+    // Columns of the history table: DateTime, Path, Filters
+    public List<String> toRow() {
+        return Arrays.asList(timestamp, path, getFilters());
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // Text form of the filters, "-" if no filter was applied
+    public String getFilters() {
+        if (filters.isEmpty()) {
+            return "-";
+        }
+        StringBuilder text = new StringBuilder();
+        for (FilterDescriptor filter : filters) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(filter);
+        }
+        return text.toString();
+    }
+
+    public List<FilterDescriptor> getFilterDescriptors() {
+        return filters;
+    }
+}
@@ -0,0 +1,48 @@
+package com.sanvalero.imagefilters.report;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public enum HistoryFormat {
+    // Formats of the history segments, every segment keeps the format it was written with
+    TEXT(".log", new TextHistoryCodec()), // One line per entry: timestamp|path|filters
+    BINARY(".bin", new BinaryHistoryCodec()); // Length-prefixed records, paths as numbers of the .dict file
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryFormat.class);
+
+    private final String extension;
+    private final HistoryCodec codec;
+
+    HistoryFormat(String extension, HistoryCodec codec) {
+        this.extension = extension;
+        this.codec = codec;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    HistoryCodec getCodec() {
+        return codec;
+    }
+
+    // Format of the new entries, it can be set with -Dimagefilters.history.format=TEXT|BINARY
+    public static HistoryFormat getDefault() {
+        String name = System.getProperty("imagefilters.history.format", "TEXT");
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown history format '" + name + "', using TEXT.");
+            return TEXT;
+        }
+    }
+
+    public static HistoryFormat fromExtension(String extension) {
+        for (HistoryFormat format : values()) {
+            if (format.extension.equals(extension)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown history file extension: " + extension);
+    }
+}
@@ -0,0 +1,34 @@
+package com.sanvalero.imagefilters.report;
+
+import java.util.List;
+
+public class HistoryPage {
+    // This class is the result of a history query: the entries found, newest first, and where the next page starts
+    private final List<HistoryEntry> entries;
+    private final HistoryCursor nextCursor;
+    private final long sequence;
+
+    public HistoryPage(List<HistoryEntry> entries, HistoryCursor nextCursor, long sequence) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+        this.sequence = sequence;
+    }
+
+    public List<HistoryEntry> getEntries() {
+        return entries;
+    }
+
+    // Null when there are no more entries
+    public HistoryCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    // Entries appended to the store when the page was read; appends with a higher sequence are not in it
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,76 @@
+package com.sanvalero.imagefilters.report;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+public class HistoryQuery {
+    // This class holds the conditions of a history search; a null condition matches every entry
+    // The time range and the path prefix are looked up in the indexes of the HistoryStore, the filter name is checked
+    // on the entries read
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String pathPrefix;
+    private String filterName;
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    public void setPathPrefix(String pathPrefix) {
+        this.pathPrefix = pathPrefix == null || pathPrefix.isEmpty() ? null : pathPrefix;
+    }
+
+    public String getFilterName() {
+        return filterName;
+    }
+
+    public void setFilterName(String filterName) {
+        this.filterName = filterName == null || filterName.isBlank() ? null : filterName.trim();
+    }
+
+    public boolean isEmpty() {
+        return from == null && to == null && pathPrefix == null && filterName == null;
+    }
+
+    // Check every condition, for entries that did not come from a query (live tail)
+    public boolean accepts(HistoryEntry entry) {
+        if (from != null || to != null) {
+            try {
+                LocalDateTime timestamp = LocalDateTime.parse(entry.getTimestamp());
+                if ((from != null && timestamp.isBefore(from)) || (to != null && timestamp.isAfter(to))) {
+                    return false;
+                }
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return matches(entry);
+    }
+
+    // Check the conditions that are not answered by the time index
+    public boolean matches(HistoryEntry entry) {
+        if (pathPrefix != null && !entry.getPath().startsWith(pathPrefix)) {
+            return false;
+        }
+        if (filterName != null && !entry.getFilters().toLowerCase().contains(filterName.toLowerCase())) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,794 @@
+package com.sanvalero.imagefilters.report;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class HistoryStore implements AutoCloseable {
+    // This class is responsible for the files of the history report
+    // Entries are appended to the active segment (history_report.log) and each one gets a 16 byte record in its index
+    // (history_report.idx) with its time and the position of its record. When the active segment reaches
+    // segmentEntries entries it is renamed to history_report.<n>.log/.idx and a new one is started, so no file grows
+    // forever. Queries go through the segments newest first and only read the records of the page they return: a time
+    // range is found by binary search in the index and a path prefix in the sorted path index (.pidx) of a sealed
+    // segment, which is written the first time the segment is searched by path
+    // Segments are written in the HistoryFormat of the store (history_report.bin and a .dict of paths for BINARY) and
+    // keep it, so a history can hold segments of both formats
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStore.class);
+
+    // The segment size can be set with -Dimagefilters.history.segmentEntries=<entries>
+    public static final int DEFAULT_SEGMENT_ENTRIES = Integer.getInteger("imagefilters.history.segmentEntries", 100_000);
+    // Entries a query reads before it returns what it found so far, it can be set with -Dimagefilters.history.maxScannedEntries
+    public static final int MAX_SCANNED_ENTRIES = Integer.getInteger("imagefilters.history.maxScannedEntries", 50_000);
+
+    private static final int INDEX_RECORD_BYTES = 16; // Time key and position of the record, both longs
+    private static final int PATH_INDEX_MAGIC = 0x48504958;
+    private static final int READ_BATCH = 256;
+    private static final int SCAN_WINDOW = 64 * 1024; // Bytes read at a time when indexing a segment
+    private static final int TAIL_WINDOW = 256 * 1024; // Bytes mapped at a time when reading backward
+
+    private final File directory;
+    private final String baseName;
+    private final HistoryFormat format; // Format of the active segment
+    private final Lock lock = new ReentrantLock(); // Writes and queries see whole groups of entries
+    private final int segmentEntries;
+    private final Pattern sealedName;
+    private final List<Segment> sealedSegments = new ArrayList<>(); // Oldest first
+    private Segment activeSegment;
+    private FileChannel activeLog; // Null until the store is opened
+    private FileChannel activeIndex;
+    private FileChannel activeDictionaryFile; // Only for the BINARY format
+    private PathDictionary activeDictionary;
+    private long activeLogSize;
+    private long lastKey = Long.MIN_VALUE; // Keys never decrease, so the index can be searched by time
+    private long sequence = 0; // Entries appended since the store was created
+    private final List<AppendListener> appendListeners = new CopyOnWriteArrayList<>();
+
+    public interface AppendListener {
+        // Called on the writer thread after a group of entries is in the file; sequence counts the entries appended so far
+        void appended(List<HistoryEntry> entries, long sequence);
+    }
+
+    // Part of a file read backward: a mapped region, or a copy for the active log
+    private interface WindowReader {
+        ByteBuffer read(long position, int length) throws IOException;
+    }
+
+    private static class Segment {
+        private final int number;
+        private final HistoryFormat format;
+        private final File logFile;
+        private final File indexFile;
+        private final File pathIndexFile;
+        private final File dictionaryFile;
+        private int entryCount = 0;
+        private SoftReference<PathDictionary> dictionary = new SoftReference<>(null); // Loaded when a sealed segment is read
+
+        Segment(int number, HistoryFormat format, File logFile, File indexFile, File pathIndexFile, File dictionaryFile) {
+            this.number = number;
+            this.format = format;
+            this.logFile = logFile;
+            this.indexFile = indexFile;
+            this.pathIndexFile = pathIndexFile;
+            this.dictionaryFile = dictionaryFile;
+        }
+    }
+
+    // Channels of the segment being queried; the ones of the active segment stay open
+    private static class SegmentReader implements AutoCloseable {
+        private final FileChannel log;
+        private final FileChannel index;
+        private final HistoryCodec codec;
+        private final PathDictionary dictionary;
+        private final int entryCount;
+        private final long logSize;
+        private final boolean owned;
+
+        SegmentReader(FileChannel log, FileChannel index, HistoryCodec codec, PathDictionary dictionary, int entryCount, long logSize, boolean owned) {
+            this.log = log;
+            this.index = index;
+            this.codec = codec;
+            this.dictionary = dictionary;
+            this.entryCount = entryCount;
+            this.logSize = logSize;
+            this.owned = owned;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owned) {
+                log.close();
+                index.close();
+            }
+        }
+    }
+
+    public HistoryStore(File logFile) {
+        this(logFile, HistoryFormat.getDefault(), DEFAULT_SEGMENT_ENTRIES);
+    }
+
+    // The name of the log file without its extension is the base name of every file of the history
+    public HistoryStore(File logFile, HistoryFormat format, int segmentEntries) {
+        File absoluteFile = logFile.getAbsoluteFile();
+        this.directory = absoluteFile.getParentFile();
+        String name = absoluteFile.getName();
+        int extension = name.lastIndexOf('.');
+        this.baseName = extension > 0 ? name.substring(0, extension) : name;
+        this.format = format;
+        this.segmentEntries = Math.max(1, segmentEntries);
+        this.sealedName = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d{6})(\\.[a-z]+)");
+    }
+
+    public HistoryFormat getFormat() {
+        return format;
+    }
+
+    // Open the segments and index the records that are not indexed yet, e.g. a log written before the index existed
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addAppendListener(AppendListener listener) {
+        appendListeners.add(listener);
+    }
+
+    public void removeAppendListener(AppendListener listener) {
+        appendListeners.remove(listener);
+    }
+
+    // Append the entries to the active segment with a single write for the records and another one for their index
+    public void append(List<HistoryEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long appendedSequence;
+        lock.lock();
+        try {
+            ensureOpen();
+            HistoryCodec codec = format.getCodec();
+            byte[][] records = new byte[entries.size()][];
+            int length = 0;
+            for (int i = 0; i < records.length; i++) {
+                records[i] = codec.encode(entries.get(i), activeDictionary);
+                length += records[i].length;
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            ByteBuffer indexRecords = ByteBuffer.allocate(entries.size() * INDEX_RECORD_BYTES);
+            long offset = activeLogSize;
+            for (int i = 0; i < records.length; i++) {
+                indexRecords.putLong(nextKey(entries.get(i))).putLong(offset);
+                data.put(records[i]);
+                offset += records[i].length;
+            }
+            data.flip();
+            indexRecords.flip();
+            // New paths go first, then the records: if the index write is lost, the next open indexes them again
+            if (activeDictionaryFile != null) {
+                long dictionarySize = activeDictionary.getSavedBytes();
+                byte[] paths = activeDictionary.takeUnsavedPaths();
+                writeFully(activeDictionaryFile, ByteBuffer.wrap(paths), dictionarySize);
+            }
+            writeFully(activeLog, data, activeLogSize);
+            writeFully(activeIndex, indexRecords, (long) activeSegment.entryCount * INDEX_RECORD_BYTES);
+            activeLogSize = offset;
+            activeSegment.entryCount += entries.size();
+            sequence += entries.size();
+            appendedSequence = sequence;
+            if (activeSegment.entryCount >= segmentEntries) {
+                rotate();
+            }
+        } catch (IOException e) {
+            closeActive(); // Opened and checked again by the next call
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        // Live tail: the listeners are called outside the lock so a slow one does not stop the queries
+        for (AppendListener listener : appendListeners) {
+            listener.appended(entries, appendedSequence);
+        }
+    }
+
+    // The last n entries, newest first, found by reading the segments backward from their end for record boundaries
+    // without their index; sealed segments are memory-mapped, the active log is copied window by window because a
+    // mapping can not be released on demand and it would keep the file from being renamed when it is sealed
+    public HistoryPage readLast(int n) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            List<HistoryEntry> entries = new ArrayList<>();
+            for (int i = sealedSegments.size(); i >= 0 && entries.size() < n; i--) {
+                Segment segment = i == sealedSegments.size() ? activeSegment : sealedSegments.get(i);
+                HistoryCodec codec = segment.format.getCodec();
+                PathDictionary dictionary = getDictionary(segment);
+                int read;
+                if (segment == activeSegment) {
+                    read = readLastRecords((position, length) -> readFully(activeLog, position, length), activeLogSize, codec, dictionary, n - entries.size(), entries);
+                } else {
+                    try (FileChannel log = FileChannel.open(segment.logFile.toPath(), StandardOpenOption.READ)) {
+                        read = readLastRecords((position, length) -> log.map(FileChannel.MapMode.READ_ONLY, position, length), log.size(), codec, dictionary, n - entries.size(), entries);
+                    }
+                }
+                if (entries.size() >= n) {
+                    // Every record of a segment is an entry of its index, so the next page can continue with a query
+                    return new HistoryPage(entries, new HistoryCursor(segment.number, segment.entryCount - read), sequence);
+                }
+            }
+            return new HistoryPage(entries, null, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Entries matching the query, newest first, starting after the cursor (null for the newest entry)
+    // At most limit entries are returned, fewer if MAX_SCANNED_ENTRIES were read without completing the page
+    public HistoryPage query(HistoryQuery query, HistoryCursor cursor, int limit) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            List<Segment> segments = new ArrayList<>();
+            segments.add(activeSegment);
+            for (int i = sealedSegments.size() - 1; i >= 0; i--) {
+                segments.add(sealedSegments.get(i));
+            }
+            Long fromKey = query.getFrom() == null ? null : toKey(query.getFrom());
+            Long toKey = query.getTo() == null ? null : toKey(query.getTo());
+            List<HistoryEntry> entries = new ArrayList<>();
+            int scanned = 0;
+            for (Segment segment : segments) {
+                if (cursor != null && segment.number > cursor.getSegment()) {
+                    continue;
+                }
+                int lo = 0;
+                try (SegmentReader reader = openReader(segment)) {
+                    int hi = reader.entryCount;
+                    if (cursor != null && segment.number == cursor.getSegment()) {
+                        hi = Math.min(hi, cursor.getEntry());
+                    }
+                    if (toKey != null) {
+                        hi = Math.min(hi, searchKey(reader, toKey, true));
+                    }
+                    if (fromKey != null) {
+                        lo = searchKey(reader, fromKey, false);
+                    }
+                    if (lo < hi && query.getPathPrefix() != null && segment != activeSegment) {
+                        // Only the entries of the paths with the prefix are read
+                        int[] candidates = searchPathIndex(segment, reader, query.getPathPrefix(), lo, hi);
+                        for (int c = candidates.length - 1; c >= 0; c--) {
+                            HistoryEntry entry = readEntries(reader, candidates[c], candidates[c] + 1).get(0);
+                            scanned++;
+                            if (query.matches(entry)) {
+                                entries.add(entry);
+                            }
+                            if (entries.size() >= limit || scanned >= MAX_SCANNED_ENTRIES) {
+                                return new HistoryPage(entries, new HistoryCursor(segment.number, candidates[c]), sequence);
+                            }
+                        }
+                    } else {
+                        int end = hi;
+                        while (end > lo) {
+                            int start = Math.max(lo, end - READ_BATCH);
+                            List<HistoryEntry> batch = readEntries(reader, start, end);
+                            for (int k = batch.size() - 1; k >= 0; k--) {
+                                scanned++;
+                                if (query.matches(batch.get(k))) {
+                                    entries.add(batch.get(k));
+                                }
+                                if (entries.size() >= limit || scanned >= MAX_SCANNED_ENTRIES) {
+                                    return new HistoryPage(entries, new HistoryCursor(segment.number, start + k), sequence);
+                                }
+                            }
+                            end = start;
+                        }
+                    }
+                }
+                if (lo > 0) {
+                    break; // The older segments are before the start of the range
+                }
+            }
+            return new HistoryPage(entries, null, sequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Write the pending data to disk and close the active segment; a later append opens it again
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closeActive();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static long toKey(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (activeLog != null) {
+            return;
+        }
+        sealedSegments.clear();
+        lastKey = Long.MIN_VALUE;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = sealedName.matcher(file.getName());
+                if (matcher.matches() && isLogExtension(matcher.group(2))) {
+                    sealedSegments.add(createSegment(Integer.parseInt(matcher.group(1)), HistoryFormat.fromExtension(matcher.group(2))));
+                }
+            }
+        }
+        sealedSegments.sort(Comparator.comparingInt(segment -> segment.number));
+        for (Segment segment : sealedSegments) {
+            catchUpSealed(segment);
+        }
+        int number = sealedSegments.isEmpty() ? 1 : sealedSegments.get(sealedSegments.size() - 1).number + 1;
+        // The active segment of another format was written before the format was changed, it is sealed as it is
+        for (HistoryFormat otherFormat : HistoryFormat.values()) {
+            File otherLog = new File(directory, baseName + otherFormat.getExtension());
+            if (otherFormat != format && otherLog.length() > 0) {
+                Segment sealed = seal(createActiveSegment(number, otherFormat));
+                catchUpSealed(sealed);
+                number++;
+            }
+        }
+        openActive(number);
+    }
+
+    private static boolean isLogExtension(String extension) {
+        for (HistoryFormat format : HistoryFormat.values()) {
+            if (format.getExtension().equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Segment createSegment(int number, HistoryFormat segmentFormat) {
+        String sealedBase = String.format("%s.%06d", baseName, number);
+        return new Segment(number, segmentFormat, new File(directory, sealedBase + segmentFormat.getExtension()),
+                new File(directory, sealedBase + ".idx"), new File(directory, sealedBase + ".pidx"), new File(directory, sealedBase + ".dict"));
+    }
+
+    private Segment createActiveSegment(int number, HistoryFormat segmentFormat) {
+        return new Segment(number, segmentFormat, new File(directory, baseName + segmentFormat.getExtension()),
+                new File(directory, baseName + ".idx"), null, new File(directory, baseName + ".dict"));
+    }
+
+    private void catchUpSealed(Segment segment) throws IOException {
+        try (FileChannel log = FileChannel.open(segment.logFile.toPath(), StandardOpenOption.READ);
+             FileChannel index = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment.entryCount = catchUpIndex(segment, log, index, false);
+        }
+    }
+
+    private void openActive(int number) throws IOException {
+        activeSegment = createActiveSegment(number, format);
+        activeLog = FileChannel.open(activeSegment.logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeIndex = FileChannel.open(activeSegment.indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (format.getCodec().usesDictionary()) {
+            activeDictionaryFile = FileChannel.open(activeSegment.dictionaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            activeDictionary = PathDictionary.read(readFully(activeDictionaryFile, 0, (int) activeDictionaryFile.size()).array());
+            activeDictionaryFile.truncate(activeDictionary.getSavedBytes()); // Drops a path cut by a crash
+        } else {
+            activeDictionary = null;
+        }
+        activeSegment.dictionary = new SoftReference<>(activeDictionary);
+        activeSegment.entryCount = catchUpIndex(activeSegment, activeLog, activeIndex, true);
+        activeLogSize = activeLog.size();
+        // A line cut by a crash is kept as it is and the next entry starts on its own line
+        if (format.getCodec().keepsPartialRecords() && activeLogSize > 0 && readFully(activeLog, activeLogSize - 1, 1).get() != '\n') {
+            byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+            writeFully(activeLog, ByteBuffer.wrap(separator), activeLogSize);
+            activeLogSize += separator.length;
+        }
+    }
+
+    private void closeActive() {
+        if (activeLog == null) {
+            return;
+        }
+        List<FileChannel> channels = new ArrayList<>(List.of(activeLog, activeIndex));
+        if (activeDictionaryFile != null) {
+            channels.add(activeDictionaryFile);
+        }
+        for (FileChannel channel : channels) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                logger.error("Error writing history report to disk: " + e.getMessage());
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing history report: " + e.getMessage());
+            }
+        }
+        activeLog = null;
+        activeIndex = null;
+        activeDictionaryFile = null;
+    }
+
+    // Seal the active segment with its number and start a new one
+    private void rotate() throws IOException {
+        Segment active = activeSegment;
+        PathDictionary dictionary = activeDictionary;
+        closeActive();
+        Segment sealed = seal(active);
+        sealed.entryCount = active.entryCount;
+        sealed.dictionary = new SoftReference<>(dictionary);
+        openActive(active.number + 1);
+        logger.debug("History segment " + sealed.number + " sealed with " + sealed.entryCount + " entries.");
+    }
+
+    // Rename the files of an active segment to the ones of a sealed segment with its number
+    private Segment seal(Segment active) throws IOException {
+        Segment sealed = createSegment(active.number, active.format);
+        // The index is moved first: a log left without index is indexed again when the store is opened. A log written
+        // before the indexes existed has none, it is indexed once it is sealed
+        if (active.indexFile.exists()) {
+            Files.move(active.indexFile.toPath(), sealed.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(sealed.indexFile.toPath()); // Left by an older segment with the same number
+        }
+        if (active.dictionaryFile.exists() && active.format.getCodec().usesDictionary()) {
+            Files.move(active.dictionaryFile.toPath(), sealed.dictionaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(active.logFile.toPath(), sealed.logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(sealed.pathIndexFile.toPath()); // Left by an older segment with the same number
+        sealedSegments.add(sealed);
+        return sealed;
+    }
+
+    // Index the records after the last indexed one; returns the number of entries of the segment
+    // A record cut by a crash at the end of the log is indexed if the format can read it, otherwise it is removed
+    // from the log if it can be written
+    private int catchUpIndex(Segment segment, FileChannel log, FileChannel index, boolean writable) throws IOException {
+        HistoryCodec codec = segment.format.getCodec();
+        long logSize = log.size();
+        long records = index.size() / INDEX_RECORD_BYTES;
+        long start = 0;
+        if (records > 0) {
+            ByteBuffer last = readFully(index, (records - 1) * INDEX_RECORD_BYTES, INDEX_RECORD_BYTES);
+            long key = last.getLong();
+            long offset = last.getLong();
+            int length = offset < logSize ? recordLengthAt(codec, log, offset, logSize) : -1;
+            if (length > 0) {
+                lastKey = Math.max(lastKey, key);
+                start = offset + length;
+            } else {
+                records = 0; // The index does not belong to this log, build it again
+            }
+        }
+        index.truncate(records * INDEX_RECORD_BYTES); // Drops a record cut by a crash
+        if (start >= logSize) {
+            return (int) records;
+        }
+        PathDictionary dictionary = getDictionary(segment);
+        long[] indexed = {0};
+        ByteBuffer newRecords = ByteBuffer.allocate(READ_BATCH * INDEX_RECORD_BYTES);
+        long end = scanRecords(log, start, logSize, codec, dictionary, (position, entry) -> {
+            newRecords.putLong(nextKey(entry)).putLong(position);
+            indexed[0]++;
+            if (!newRecords.hasRemaining()) {
+                newRecords.flip();
+                writeFully(index, newRecords, index.size());
+                newRecords.clear();
+            }
+        });
+        if (end < logSize) {
+            logger.warn("History segment " + segment.number + ": incomplete record at " + end + (writable ? " removed." : " skipped."));
+            if (writable) {
+                log.truncate(end);
+            }
+        }
+        newRecords.flip();
+        writeFully(index, newRecords, index.size());
+        logger.debug("History segment " + segment.number + ": " + indexed[0] + " entries indexed.");
+        return (int) (records + indexed[0]);
+    }
+
+    interface RecordVisitor {
+        void visit(long position, HistoryEntry entry) throws IOException;
+    }
+
+    // Read the records of a log from start, in order; returns where the last whole record ends
+    // A line without separator at the end of a text log is read as a record
+    static long scanRecords(FileChannel log, long start, long logSize, HistoryCodec codec, PathDictionary dictionary, RecordVisitor visitor) throws IOException {
+        long position = start;
+        int window = SCAN_WINDOW;
+        while (position < logSize) {
+            int length = (int) Math.min(window, logSize - position);
+            ByteBuffer chunk = readFully(log, position, length);
+            int offset = 0;
+            while (offset < length) {
+                int recordLength = codec.recordLength(chunk, offset, length);
+                if (recordLength < 0) {
+                    if (position + length < logSize || !codec.keepsPartialRecords()) {
+                        break;
+                    }
+                    recordLength = length - offset; // The last line, without its separator
+                }
+                visitor.visit(position + offset, codec.decode(chunk.array(), offset, recordLength, dictionary));
+                offset += recordLength;
+            }
+            if (offset == 0) {
+                if (position + length == logSize) {
+                    return position; // A record cut at the end of the file
+                }
+                window *= 2; // The record is bigger than the window
+                continue;
+            }
+            position += offset;
+            window = SCAN_WINDOW;
+        }
+        return position;
+    }
+
+    // Length of the record at the offset, or -1 if it is not a whole record
+    private int recordLengthAt(HistoryCodec codec, FileChannel log, long offset, long logSize) throws IOException {
+        int window = SCAN_WINDOW;
+        while (true) {
+            int length = (int) Math.min(window, logSize - offset);
+            int recordLength = codec.recordLength(readFully(log, offset, length), 0, length);
+            if (recordLength > 0) {
+                return recordLength;
+            }
+            if (offset + length == logSize) {
+                return codec.keepsPartialRecords() ? length : -1;
+            }
+            window *= 2;
+        }
+    }
+
+    // Key of a new entry: its time, or the key of the previous entry if it is earlier or cannot be read
+    private long nextKey(HistoryEntry entry) {
+        try {
+            lastKey = Math.max(lastKey, toKey(LocalDateTime.parse(entry.getTimestamp())));
+        } catch (DateTimeParseException e) {
+            lastKey = Math.max(lastKey, 0);
+        }
+        return lastKey;
+    }
+
+    // Paths of a binary segment, null for the text format
+    private PathDictionary getDictionary(Segment segment) throws IOException {
+        if (segment == activeSegment) {
+            return activeDictionary;
+        }
+        if (!segment.format.getCodec().usesDictionary()) {
+            return null;
+        }
+        PathDictionary dictionary = segment.dictionary.get();
+        if (dictionary == null) {
+            dictionary = segment.dictionaryFile.exists() ? PathDictionary.read(Files.readAllBytes(segment.dictionaryFile.toPath())) : new PathDictionary();
+            segment.dictionary = new SoftReference<>(dictionary);
+        }
+        return dictionary;
+    }
+
+    private SegmentReader openReader(Segment segment) throws IOException {
+        HistoryCodec codec = segment.format.getCodec();
+        if (segment == activeSegment) {
+            return new SegmentReader(activeLog, activeIndex, codec, activeDictionary, activeSegment.entryCount, activeLogSize, false);
+        }
+        PathDictionary dictionary = getDictionary(segment);
+        FileChannel log = FileChannel.open(segment.logFile.toPath(), StandardOpenOption.READ);
+        try {
+            FileChannel index = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.READ);
+            return new SegmentReader(log, index, codec, dictionary, segment.entryCount, log.size(), true);
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    // First entry with a key greater or equal (or only greater) than the given one
+    private int searchKey(SegmentReader reader, long key, boolean greater) throws IOException {
+        int lo = 0;
+        int hi = reader.entryCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = readFully(reader.index, (long) mid * INDEX_RECORD_BYTES, Long.BYTES).getLong();
+            if (midKey < key || (greater && midKey == key)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Add up to n records before the end of the file to the entries, newest first; returns how many were added
+    // A record that starts before the window is read again with a bigger window
+    private int readLastRecords(WindowReader reader, long size, HistoryCodec codec, PathDictionary dictionary, int n, List<HistoryEntry> entries) throws IOException {
+        int read = 0;
+        long recordEnd = size;
+        long window = TAIL_WINDOW;
+        while (read < n && recordEnd > 0) {
+            long windowStart = Math.max(0, recordEnd - window);
+            ByteBuffer buffer = reader.read(windowStart, (int) (recordEnd - windowStart));
+            int end = (int) (recordEnd - windowStart);
+            boolean found = false;
+            while (read < n && end > 0) {
+                int start = codec.recordStart(buffer, end);
+                if (start < 0) {
+                    if (windowStart > 0 || !codec.keepsPartialRecords()) {
+                        break;
+                    }
+                    start = 0; // The first line of the file
+                }
+                byte[] bytes = new byte[end - start];
+                buffer.get(start, bytes);
+                entries.add(codec.decode(bytes, 0, bytes.length, dictionary));
+                read++;
+                end = start;
+                found = true;
+            }
+            recordEnd = windowStart + end;
+            if (!found && windowStart == 0) {
+                throw new IOException("Corrupt history record before " + recordEnd);
+            }
+            window = found ? TAIL_WINDOW : Math.min(window * 2, Integer.MAX_VALUE);
+        }
+        return read;
+    }
+
+    // Entries from (inclusive) to (exclusive) of the segment, read with one call for the index and one for the records
+    private List<HistoryEntry> readEntries(SegmentReader reader, int from, int to) throws IOException {
+        int count = to - from;
+        ByteBuffer records = readFully(reader.index, (long) from * INDEX_RECORD_BYTES, count * INDEX_RECORD_BYTES);
+        long[] offsets = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            records.getLong();
+            offsets[i] = records.getLong();
+        }
+        offsets[count] = to < reader.entryCount
+                ? readFully(reader.index, (long) to * INDEX_RECORD_BYTES + Long.BYTES, Long.BYTES).getLong()
+                : reader.logSize;
+        byte[] bytes = readFully(reader.log, offsets[0], (int) (offsets[count] - offsets[0])).array();
+        List<HistoryEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(reader.codec.decode(bytes, (int) (offsets[i] - offsets[0]), (int) (offsets[i + 1] - offsets[i]), reader.dictionary));
+        }
+        return entries;
+    }
+
+    // Entries between lo and hi whose path starts with the prefix, in ascending order
+    private int[] searchPathIndex(Segment segment, SegmentReader reader, String prefix, int lo, int hi) throws IOException {
+        ensurePathIndex(segment, reader);
+        try (FileChannel channel = FileChannel.open(segment.pathIndexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = map.getInt(4);
+            int first = 0;
+            int last = count;
+            while (first < last) {
+                int mid = (first + last) >>> 1;
+                if (readIndexedPath(map, count, mid).compareTo(prefix) < 0) {
+                    first = mid + 1;
+                } else {
+                    last = mid;
+                }
+            }
+            // The paths with the prefix are contiguous in the sorted index
+            int[] entries = new int[16];
+            int found = 0;
+            for (int i = first; i < count && readIndexedPath(map, count, i).startsWith(prefix); i++) {
+                int position = map.getInt(8 + i * Integer.BYTES);
+                int entry = map.getInt(position + Integer.BYTES + map.getInt(position));
+                if (entry >= lo && entry < hi) {
+                    if (found == entries.length) {
+                        entries = Arrays.copyOf(entries, found * 2);
+                    }
+                    entries[found++] = entry;
+                }
+            }
+            entries = Arrays.copyOf(entries, found);
+            Arrays.sort(entries);
+            return entries;
+        }
+    }
+
+    private String readIndexedPath(MappedByteBuffer map, int count, int i) {
+        int position = map.getInt(8 + i * Integer.BYTES);
+        byte[] bytes = new byte[map.getInt(position)];
+        map.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Path index: magic, number of entries, position of every record sorted by path, and the records (path, entry)
+    private void ensurePathIndex(Segment segment, SegmentReader reader) throws IOException {
+        if (segment.pathIndexFile.length() >= 8) {
+            try (FileChannel channel = FileChannel.open(segment.pathIndexFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer header = readFully(channel, 0, 8);
+                if (header.getInt() == PATH_INDEX_MAGIC && header.getInt() == reader.entryCount) {
+                    return;
+                }
+            }
+        }
+        String[] paths = new String[reader.entryCount];
+        for (int start = 0; start < reader.entryCount; start += READ_BATCH) {
+            List<HistoryEntry> batch = readEntries(reader, start, Math.min(reader.entryCount, start + READ_BATCH));
+            for (int k = 0; k < batch.size(); k++) {
+                paths[start + k] = batch.get(k).getPath();
+            }
+        }
+        Integer[] order = new Integer[paths.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> paths[i]).thenComparingInt(i -> i));
+        byte[][] encodedPaths = new byte[paths.length][];
+        int position = 8 + paths.length * Integer.BYTES;
+        File temporaryFile = new File(segment.pathIndexFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(PATH_INDEX_MAGIC);
+            output.writeInt(paths.length);
+            for (int i = 0; i < order.length; i++) {
+                encodedPaths[i] = paths[order[i]].getBytes(StandardCharsets.UTF_8);
+                output.writeInt(position);
+                position += Integer.BYTES + encodedPaths[i].length + Integer.BYTES;
+            }
+            for (int i = 0; i < order.length; i++) {
+                output.writeInt(encodedPaths[i].length);
+                output.write(encodedPaths[i]);
+                output.writeInt(order[i]);
+            }
+        }
+        Files.move(temporaryFile.toPath(), segment.pathIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.debug("History segment " + segment.number + ": path index written for " + paths.length + " entries.");
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of history file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sanvalero.imagefilters.report;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PathDictionary {
+    // This class gives every path of a binary history segment a number, so the entries store the number instead of
+    // the path; the paths are saved in order in the .dict file of the segment as [int length][UTF-8 bytes]
+    private final List<String> paths = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int savedCount = 0;
+    private long savedBytes = 0;
+
+    // Read the paths of a dictionary file; a path cut by a crash is left out
+    public static PathDictionary read(byte[] bytes) {
+        PathDictionary dictionary = new PathDictionary();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 0 || buffer.remaining() - Integer.BYTES < length) {
+                break;
+            }
+            buffer.position(buffer.position() + Integer.BYTES);
+            dictionary.idOf(new String(bytes, buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+        }
+        dictionary.savedCount = dictionary.paths.size();
+        dictionary.savedBytes = buffer.position();
+        return dictionary;
+    }
+
+    // Number of the path, a new one if it was not in the dictionary
+    public int idOf(String path) {
+        Integer id = ids.get(path);
+        if (id == null) {
+            id = paths.size();
+            paths.add(path);
+            ids.put(path, id);
+        }
+        return id;
+    }
+
+    // Null if the number is not in the dictionary
+    public String pathOf(int id) {
+        return id >= 0 && id < paths.size() ? paths.get(id) : null;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    // Length of the valid part of the file, the rest is cut by a crash
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    // Bytes of the paths added since the last call, to be appended to the file
+    public byte[] takeUnsavedPaths() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int i = savedCount; i < paths.size(); i++) {
+            byte[] bytes = paths.get(i).getBytes(StandardCharsets.UTF_8);
+            output.write(bytes.length >>> 24);
+            output.write(bytes.length >>> 16);
+            output.write(bytes.length >>> 8);
+            output.write(bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+        savedCount = paths.size();
+        savedBytes += output.size();
+        return output.toByteArray();
+    }
+}
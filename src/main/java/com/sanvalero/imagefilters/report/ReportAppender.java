@@ -0,0 +1,194 @@
+package com.sanvalero.imagefilters.report;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ReportAppender {
+    // This class appends entries to the history store from a single writer thread
+    // Callers only put the entry in a bounded queue (and wait if it is full); the writer appends the entries in groups,
+    // when flushEntries entries are waiting or flushMillis have passed since the first one
+    // Defaults can be set with -Dimagefilters.report.queueCapacity=<entries>, -Dimagefilters.report.flushEntries=<entries>
+    // and -Dimagefilters.report.flushMs=<ms>
+    public static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("imagefilters.report.queueCapacity", 4096);
+    public static final int DEFAULT_FLUSH_ENTRIES = Integer.getInteger("imagefilters.report.flushEntries", 64);
+    public static final long DEFAULT_FLUSH_MILLIS = Long.getLong("imagefilters.report.flushMs", 200L);
+
+    private final HistoryStore store;
+    private final int flushEntries;
+    private final long flushNanos;
+    private final BlockingQueue<Object> queue; // Entries, or latches of flush requests
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock(); // Nothing is queued after the close request
+    private final CountDownLatch closeLatch = new CountDownLatch(1);
+
+    public ReportAppender(HistoryStore store) {
+        this(store, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_ENTRIES, DEFAULT_FLUSH_MILLIS);
+    }
+
+    public ReportAppender(HistoryStore store, int queueCapacity, int flushEntries, long flushMillis) {
+        this.store = store;
+        this.flushEntries = Math.max(1, flushEntries);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushMillis));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writerThread = Thread.ofPlatform().name("imagefilters-report-writer").daemon(true).unstarted(this::writeLoop);
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    // Queue an entry to be written; waits while the queue is full
+    public void append(HistoryEntry entry) throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Report appender is closed.");
+            }
+            queue.put(entry);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    // Wait until every entry queued before this call is in the file
+    public void flush() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            queue.put(flushed);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        flushed.await();
+    }
+
+    // Write the pending entries and stop the writer thread
+    public void close() throws InterruptedException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        queue.put(closeLatch);
+        closeLatch.await();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void writeLoop() {
+        List<HistoryEntry> entries = new ArrayList<>();
+        long deadline = 0;
+        boolean stopped = false;
+        try {
+            while (true) {
+                Object item;
+                if (entries.isEmpty()) {
+                    item = queue.take();
+                } else {
+                    item = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                if (item instanceof HistoryEntry) {
+                    if (entries.isEmpty()) {
+                        deadline = System.nanoTime() + flushNanos;
+                    }
+                    entries.add((HistoryEntry) item);
+                    // Take the entries that are already waiting without blocking again
+                    while (entries.size() < flushEntries && queue.peek() instanceof HistoryEntry) {
+                        entries.add((HistoryEntry) queue.poll());
+                    }
+                    if (entries.size() >= flushEntries || System.nanoTime() - deadline >= 0) {
+                        write(entries);
+                    }
+                } else if (item instanceof CountDownLatch) {
+                    write(entries);
+                    if (item == closeLatch) {
+                        closeLatch.countDown();
+                        stopped = true;
+                        return;
+                    }
+                    ((CountDownLatch) item).countDown();
+                } else {
+                    write(entries); // The oldest entry waited flushMillis
+                }
+            }
+        } catch (InterruptedException e) {
+            write(entries);
+        } finally {
+            if (!stopped) {
+                abandon();
+            }
+        }
+    }
+
+    // The writer thread stops before the close request: nothing else will be written, so the appender is closed and
+    // every caller waiting for a flush or for the close is released
+    private void abandon() {
+        closed = true;
+        // Callers blocked on a full queue hold the read lock, draining the queue lets them finish
+        boolean interrupted = Thread.interrupted(); // Keep draining, the callers must not wait forever
+        boolean locked = false;
+        while (!locked) {
+            releaseQueued();
+            try {
+                locked = closeLock.writeLock().tryLock(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            releaseQueued(); // Queued before the lock was taken; later calls see the appender closed
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        closeLatch.countDown();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void releaseQueued() {
+        int dropped = 0;
+        Object item;
+        while ((item = queue.poll()) != null) {
+            if (item instanceof CountDownLatch) {
+                ((CountDownLatch) item).countDown();
+            } else {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            System.err.println("Report writer stopped, " + dropped + " report entries were not written.");
+        }
+    }
+
+    // Group commit: all the entries in one write call
+    private void write(List<HistoryEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            store.append(entries);
+        } catch (IOException | RuntimeException e) {
+            // The writer keeps running, the next entries may still be written
+            System.err.println("Error writing " + entries.size() + " report entries: " + e.getMessage());
+        }
+        entries.clear();
+    }
+}
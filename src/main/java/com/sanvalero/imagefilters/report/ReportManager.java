@@ -1,23 +1,19 @@
 package com.sanvalero.imagefilters.report;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+import com.sanvalero.imagefilters.filter.FilterFactory;
 
 public class ReportManager {
     private File logFile;
-    private final Lock lock = new ReentrantLock();
+    private final HistoryStore store; // Segments and indexes of the history
+    private final ReportAppender appender; // Writes the entries in groups from its own thread
     
     public ReportManager() {
         this("logs/history_report.log");
@@ -39,44 +35,70 @@ public class ReportManager {
                 System.err.println("Failed to create log file: " + e.getMessage());
             }
         }
+        this.store = new HistoryStore(logFile);
+        try {
+            store.open();
+        } catch (IOException e) {
+            System.err.println("Failed to open history report: " + e.getMessage());
+        }
+        this.appender = new ReportAppender(store);
+        this.appender.start();
     }
 
-    public void writeFilterReportEntry(LocalDateTime timestamp, String imagePath, List<Filter> filters) {
-        lock.lock(); // Lock the method to prevent concurrent access
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
-            // Example format: 2023-10-01T12:00:00|path/to/image.jpg|Grayscale,Invert Colors
-            String filtersString = filters.toString().replace("[", "").replace("]", "");
-            if (filtersString.isEmpty()) {
-                filtersString = "-";
-            }
-            String timestampedMessage = timestamp.toString() + "|" + imagePath + "|" + filtersString;
-            // Write the message to the log file
-            writer.write(timestampedMessage);
-            writer.newLine();
+    public void writeFilterReportEntry(LocalDateTime timestamp, String imagePath, List<Filter> filters) throws InterruptedException {
+        // Example format: 2023-10-01T12:00:00|path/to/image.jpg|Grayscale, Brightness(20)
+        List<FilterDescriptor> descriptors = new ArrayList<>();
+        for (Filter filter : filters) {
+            descriptors.add(FilterFactory.describe(filter)); // Keeps the parameters of the filter
+        }
+        HistoryEntry entry = new HistoryEntry(timestamp.toString(), imagePath, descriptors);
+        try {
+            // The entry is written by the appender thread together with the other waiting entries
+            appender.append(entry);
+            return;
+        } catch (IllegalStateException e) {
+            // Entries arriving after the application closed the appender are written directly
+        }
+        try {
+            store.append(List.of(entry));
         } catch (IOException e) {
             System.err.println("Error writing message: " + e.getMessage());
-        } finally {
-            lock.unlock();
         }
     }
 
-    public List<List<String>> readFilterReportEntries() {
-        // Example: [["2023-10-01T12:00:00", "path/to/image.jpg", "Grayscale, Invert Colors"], ...]
-        lock.lock(); // Lock the method to prevent concurrent access
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            List<List<String>> entries = new ArrayList<>();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                List<String> entry = Arrays.asList(parts);
-                entries.add(entry);
-            }
-            return entries;
+    // Write every queued entry to the file
+    public void flush() throws InterruptedException {
+        appender.flush();
+    }
+
+    // Write every queued entry and close the file, called when the application stops
+    public void close() throws InterruptedException {
+        appender.close();
+        try {
+            store.close();
         } catch (IOException e) {
-            System.err.println("Error reading log file: " + e.getMessage());
-            return new ArrayList<>();
-        } finally {
-            lock.unlock();
+            System.err.println("Error closing history report: " + e.getMessage());
         }
     }
+
+    // The newest n entries, read backward from the end of the history without going through the rest of it
+    public HistoryPage readLastEntries(int n) throws IOException, InterruptedException {
+        appender.flush(); // Show the entries still waiting in the queue too
+        return store.readLast(n);
+    }
+
+    // Live tail: the listener gets every group of entries once it is written, on the writer thread
+    public void addLiveTailListener(HistoryStore.AppendListener listener) {
+        store.addAppendListener(listener);
+    }
+
+    public void removeLiveTailListener(HistoryStore.AppendListener listener) {
+        store.removeAppendListener(listener);
+    }
+
+    // A page of the entries matching the query, newest first; pass the cursor of the previous page to get the next one
+    public HistoryPage queryEntries(HistoryQuery query, HistoryCursor cursor, int limit) throws IOException, InterruptedException {
+        appender.flush(); // Show the entries still waiting in the queue too
+        return store.query(query, cursor, limit);
+    }
 }
@@ -0,0 +1,53 @@
+package com.sanvalero.imagefilters.report;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class TextHistoryCodec implements HistoryCodec {
+    // This class reads and writes the history as lines: timestamp|path|filters
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Override
+    public byte[] encode(HistoryEntry entry, PathDictionary dictionary) {
+        return (entry.toLine() + LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public HistoryEntry decode(byte[] bytes, int offset, int length, PathDictionary dictionary) {
+        // Lines written on Windows end with \r\n
+        while (length > 0 && (bytes[offset + length - 1] == '\n' || bytes[offset + length - 1] == '\r')) {
+            length--;
+        }
+        return HistoryEntry.parse(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int recordLength(ByteBuffer buffer, int position, int limit) {
+        for (int i = position; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1 - position;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int recordStart(ByteBuffer buffer, int end) {
+        for (int i = end - 2; i >= 0; i--) { // The last byte is the separator of the line
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean usesDictionary() {
+        return false;
+    }
+
+    @Override
+    public boolean keepsPartialRecords() {
+        return true;
+    }
+}
@@ -0,0 +1,278 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutionManager {
+    // This class is responsible for the threads of the application
+    // CPU-bound work runs on the executor of the selected ExecutionStrategy and blocking I/O (loading, saving, reports)
+    // runs on virtual threads. The tabs keep the same CPU executor for their whole life: changing the strategy swaps the
+    // pool behind it and shuts the old one down once its tasks finish, and changing the parallelism resizes it in place
+    // (a ForkJoinPool does not add workers while its queue is not empty, so it is replaced by one of the new size)
+    // Jobs reach the CPU executor through a JobScheduler, which admits at most parallelism of them at the same time
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionManager.class);
+
+    // Threads used by default, it can be set with -Dimagefilters.execution.parallelism=<threads>
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger("imagefilters.execution.parallelism", Runtime.getRuntime().availableProcessors());
+
+    private final CpuExecutor cpuExecutor = new CpuExecutor();
+    private final ExecutorService ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("imagefilters-io-", 0).factory());
+    // Segmented video decoders and encoders block in native OpenCV calls, which would hold the carriers of virtual
+    // threads, and all of them must run at the same time; they get platform threads that are reused between videos
+    private final ExecutorService blockingExecutor = Executors.newCachedThreadPool(Thread.ofPlatform().name("imagefilters-blocking-", 0).daemon(true).factory());
+    private ExecutionStrategy strategy;
+    private int parallelism;
+    private volatile ExecutorService delegate;
+    private volatile boolean shutdown = false;
+    private final JobScheduler jobScheduler;
+
+    public ExecutionManager() {
+        this(ExecutionStrategy.getDefault(), DEFAULT_PARALLELISM);
+    }
+
+    public ExecutionManager(ExecutionStrategy strategy, int parallelism) {
+        this.strategy = strategy;
+        this.parallelism = Math.max(1, parallelism);
+        this.delegate = createExecutor(strategy, this.parallelism);
+        this.jobScheduler = new JobScheduler(cpuExecutor, this.parallelism);
+        logger.info("Execution strategy: " + strategy + " with " + this.parallelism + " threads.");
+    }
+
+    // Executor for filters and video frames; it is always the same object, whatever the strategy
+    public ExecutorService getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    // Executor for the jobs of a priority class, queued in the JobScheduler until a thread is free for them
+    public Executor getExecutor(JobClass jobClass) {
+        return jobScheduler.getExecutor(jobClass);
+    }
+
+    public JobScheduler getJobScheduler() {
+        return jobScheduler;
+    }
+
+    // Executor for blocking file and report operations
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    // Executor for the video decoders and encoders, each task holds its thread until the video is done
+    public ExecutorService getBlockingExecutor() {
+        return blockingExecutor;
+    }
+
+    public synchronized ExecutionStrategy getStrategy() {
+        return strategy;
+    }
+
+    public synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    // Change the pool behind the CPU executor; tasks already queued in the old one still run
+    public synchronized void setStrategy(ExecutionStrategy newStrategy) {
+        if (shutdown || newStrategy == strategy) {
+            return;
+        }
+        replaceExecutor(newStrategy, parallelism);
+        logger.info("Execution strategy changed to " + newStrategy + " with " + parallelism + " threads.");
+    }
+
+    // Resize the current pool; tasks waiting in the queue use the new size
+    public synchronized void setParallelism(int newParallelism) {
+        newParallelism = Math.max(1, newParallelism);
+        if (shutdown || newParallelism == parallelism) {
+            return;
+        }
+        ExecutorService current = delegate;
+        if (current instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) current;
+            // The maximum can never be lower than the core size, so the order depends on the direction
+            if (newParallelism > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(newParallelism);
+                pool.setCorePoolSize(newParallelism);
+            } else {
+                pool.setCorePoolSize(newParallelism);
+                pool.setMaximumPoolSize(newParallelism);
+            }
+        } else if (current instanceof ForkJoinPool) {
+            replaceExecutor(strategy, newParallelism);
+        } else if (current instanceof BoundedVirtualExecutor) {
+            ((BoundedVirtualExecutor) current).setLimit(newParallelism);
+        }
+        parallelism = newParallelism;
+        jobScheduler.setMaxConcurrent(newParallelism);
+        logger.info("Parallelism changed to " + newParallelism + " threads (" + strategy + ").");
+    }
+
+    private void replaceExecutor(ExecutionStrategy newStrategy, int newParallelism) {
+        ExecutorService oldExecutor = delegate;
+        delegate = createExecutor(newStrategy, newParallelism);
+        strategy = newStrategy;
+        oldExecutor.shutdown(); // Its queued tasks still run, then its threads end
+    }
+
+    public void shutdown() {
+        logger.info("Shutting down executor services...");
+        synchronized (this) {
+            shutdown = true;
+            delegate.shutdown();
+        }
+        ioExecutor.shutdown(); // Pending saves and reports still finish
+        blockingExecutor.shutdown();
+    }
+
+    // Wait for the pending saves and reports after shutdown, returns false if the timeout passed
+    public boolean awaitIoTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return ioExecutor.awaitTermination(timeout, unit);
+    }
+
+    private static ExecutorService createExecutor(ExecutionStrategy strategy, int parallelism) {
+        switch (strategy) {
+            case FIXED:
+                return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                        Thread.ofPlatform().name("imagefilters-worker-", 0).daemon(true).factory());
+            case VIRTUAL_THREADS:
+                return new BoundedVirtualExecutor(parallelism);
+            case WORK_STEALING:
+            default:
+                // Async mode: queued tasks are taken in FIFO order, row bands forked by a task are still stolen LIFO
+                return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        }
+    }
+
+    // Stable facade handed to the tabs; every call goes to the current pool
+    private class CpuExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            ExecutorService current = delegate;
+            try {
+                current.execute(command);
+            } catch (RejectedExecutionException e) {
+                // The pool was replaced while submitting, the new one takes the task
+                ExecutorService replacement = delegate;
+                if (shutdown || replacement == current) {
+                    throw e;
+                }
+                replacement.execute(command);
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            ExecutionManager.this.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            ExecutionManager.this.shutdown();
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    // Runs every task on its own virtual thread, but only limit of them at the same time so CPU-bound work does not
+    // oversubscribe the carrier threads; the limit can be changed while tasks are waiting
+    private static class BoundedVirtualExecutor extends AbstractExecutorService {
+        private final ExecutorService threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("imagefilters-virtual-", 0).factory());
+        private final ResizableSemaphore permits;
+        private final AtomicInteger limit;
+
+        BoundedVirtualExecutor(int limit) {
+            this.permits = new ResizableSemaphore(limit);
+            this.limit = new AtomicInteger(limit);
+        }
+
+        synchronized void setLimit(int newLimit) {
+            int difference = newLimit - limit.getAndSet(newLimit);
+            if (difference > 0) {
+                permits.release(difference);
+            } else if (difference < 0) {
+                permits.reducePermits(-difference); // Running tasks keep their permit, new ones wait
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            threads.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            threads.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return threads.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return threads.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return threads.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return threads.awaitTermination(timeout, unit);
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public enum ExecutionStrategy {
+    // How the CPU-bound work (filters, video frames) is run
+    FIXED, // Fixed thread pool with a shared FIFO queue (original behaviour)
+    WORK_STEALING, // ForkJoinPool, idle threads steal the row bands and frames queued by busy ones
+    VIRTUAL_THREADS; // One virtual thread per task, at most parallelism of them running at the same time
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionStrategy.class);
+
+    // Default strategy, it can be set with -Dimagefilters.execution.strategy=FIXED|WORK_STEALING|VIRTUAL_THREADS
+    public static ExecutionStrategy getDefault() {
+        String name = System.getProperty("imagefilters.execution.strategy", "WORK_STEALING");
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown execution strategy '" + name + "', using WORK_STEALING.");
+            return WORK_STEALING;
+        }
+    }
+}
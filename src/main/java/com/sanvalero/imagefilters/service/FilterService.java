@@ -1,6 +1,8 @@
 package com.sanvalero.imagefilters.service;
 
 import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.task.DelayPolicy;
+import com.sanvalero.imagefilters.task.FilterResultCache;
 import com.sanvalero.imagefilters.task.FilterTask;
 
 import org.slf4j.Logger;
@@ -18,6 +20,10 @@ public class FilterService extends Service<BufferedImage> {
     private final int id;
     private BufferedImage prevImage;
     private List<Filter> filters;
+    private DelayPolicy delayPolicy; // Null to use the default delay policy
+    private long parallelThreshold = FilterTask.DEFAULT_PARALLEL_THRESHOLD; // Minimum number of pixels to filter an image in parallel
+    private FilterResultCache resultCache; // Null to always filter the whole chain
+    private Object cacheSource; // Identity of the image in the cache
 
     public FilterService() {
         this.id = 0;
@@ -41,14 +47,42 @@ public class FilterService extends Service<BufferedImage> {
         return id;
     }
     
+    public long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // Images with at least this many pixels are split in row bands and filtered in parallel (Long.MAX_VALUE disables it)
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public void setDelayPolicy(DelayPolicy delayPolicy) {
+        this.delayPolicy = delayPolicy;
+    }
+
+    public void setResultCache(FilterResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
     public void setExecutionParameters(BufferedImage prevImage, List<Filter> filters) {
+        setExecutionParameters(prevImage, filters, null);
+    }
+
+    // The cache source identifies the image the pixels come from, null to not use the cache
+    public void setExecutionParameters(BufferedImage prevImage, List<Filter> filters, Object cacheSource) {
         this.prevImage = prevImage;
         this.filters = filters;
+        this.cacheSource = cacheSource;
     }
 
     @Override
     protected Task<BufferedImage> createTask() {
         logger.info("Creating FilterTask...");
-        return new FilterTask(prevImage, filters);
+        FilterTask filterTask = new FilterTask(prevImage, filters, parallelThreshold, null);
+        if (delayPolicy != null) {
+            filterTask.setDelayPolicy(delayPolicy);
+        }
+        filterTask.setResultCache(resultCache, cacheSource);
+        return filterTask;
     }
 }
\ No newline at end of file
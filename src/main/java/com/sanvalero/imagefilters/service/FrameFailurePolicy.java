@@ -0,0 +1,24 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public enum FrameFailurePolicy {
+    // What the video writer does with a frame that failed or was cancelled while filtering
+    SKIP, // Leave the frame out of the output video
+    DUPLICATE_PREVIOUS, // Write the previous frame again so the video keeps its length and timing
+    ABORT; // Stop the whole video processing
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameFailurePolicy.class);
+
+    // Default policy, it can be set with -Dimagefilters.video.failurePolicy=SKIP|DUPLICATE_PREVIOUS|ABORT
+    public static FrameFailurePolicy getDefault() {
+        String name = System.getProperty("imagefilters.video.failurePolicy", "SKIP");
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown frame failure policy '" + name + "', using SKIP.");
+            return SKIP;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sanvalero.imagefilters.task.ProgressReporter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import org.opencv.core.Mat;
+
+public class FrameScheduler {
+    // This class is responsible for handing the decoded frames to the filter executor in chunks
+    // One job filters a whole chunk, so a long video costs one submission every few frames instead of one per frame,
+    // and completions are counted here, off the FX thread, and published to the tab as a single VideoProgress
+    private static final Logger logger = LoggerFactory.getLogger(FrameScheduler.class);
+
+    // Frames filtered by each job, it can be set with -Dimagefilters.video.chunkSize=<frames>
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("imagefilters.video.chunkSize", 8);
+
+    public interface FrameHandler {
+        // Filter a frame, returns false if it failed
+        boolean process(int index, Mat frame);
+
+        // The frame could not be scheduled, e.g. because the executor is shutting down
+        void reject(int index, Mat frame, Exception exception);
+    }
+
+    private final Executor executor;
+    private final FrameHandler frameHandler;
+    private final int chunkSize;
+    private int[] pendingIndexes; // Frames waiting for their chunk to be full
+    private Mat[] pendingFrames;
+    private int pendingCount = 0;
+    private boolean stopped = false;
+
+    private final AtomicInteger framesRead = new AtomicInteger();
+    private final AtomicInteger framesFiltered = new AtomicInteger();
+    private final AtomicInteger failedFrames = new AtomicInteger();
+    private final AtomicInteger framesWritten = new AtomicInteger();
+    private final AtomicInteger chunksSubmitted = new AtomicInteger();
+    private volatile int totalFrames = 0;
+    private volatile boolean readingFinished = false;
+    private volatile boolean failed = false;
+    private final long startNanos = System.nanoTime();
+
+    private volatile Consumer<VideoProgress> progressListener;
+    private Executor progressExecutor = Platform::runLater; // The tab is updated on the FX thread
+    private final long publishIntervalNanos = ProgressReporter.getDefaultIntervalMillis() * 1_000_000L;
+    private volatile long lastPublishNanos = 0;
+    private final AtomicBoolean publishPending = new AtomicBoolean(false);
+
+    public FrameScheduler(Executor executor, FrameHandler frameHandler, int chunkSize) {
+        this.executor = executor;
+        this.frameHandler = frameHandler;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pendingIndexes = new int[this.chunkSize];
+        this.pendingFrames = new Mat[this.chunkSize];
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunksSubmitted() {
+        return chunksSubmitted.get();
+    }
+
+    public void setTotalFrames(int totalFrames) {
+        this.totalFrames = totalFrames;
+    }
+
+    // The listener is called on the progress executor with the latest snapshot, never more than once per interval
+    public void setProgressListener(Consumer<VideoProgress> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setProgressExecutor(Executor progressExecutor) {
+        this.progressExecutor = progressExecutor;
+    }
+
+    // Add a decoded frame to the current chunk, the chunk is submitted once it is full
+    public synchronized void submit(int index, Mat frame) {
+        if (stopped) {
+            frameHandler.reject(index, frame, new RejectedExecutionException("Frame scheduler is stopped."));
+            return;
+        }
+        framesRead.incrementAndGet();
+        pendingIndexes[pendingCount] = index;
+        pendingFrames[pendingCount] = frame;
+        pendingCount++;
+        if (pendingCount == chunkSize) {
+            flush();
+        } else {
+            publishProgress(false);
+        }
+    }
+
+    // Submit the frames of the current chunk even if it is not full, e.g. because the decoder has to wait
+    public synchronized void flush() {
+        if (pendingCount == 0) {
+            return;
+        }
+        int[] indexes = pendingIndexes;
+        Mat[] frames = pendingFrames;
+        int count = pendingCount;
+        pendingIndexes = new int[chunkSize];
+        pendingFrames = new Mat[chunkSize];
+        pendingCount = 0;
+        try {
+            executor.execute(() -> processChunk(indexes, frames, count));
+            chunksSubmitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Chunk of " + count + " frames starting at " + indexes[0] + " was rejected by the executor.");
+            for (int i = 0; i < count; i++) {
+                frameHandler.reject(indexes[i], frames[i], e);
+            }
+            failedFrames.addAndGet(count);
+        }
+        publishProgress(false);
+    }
+
+    // No more frames will be submitted
+    public void finishReading(int frameCount) {
+        flush();
+        totalFrames = frameCount;
+        readingFinished = true;
+        logger.info(frameCount + " frames scheduled in " + chunksSubmitted.get() + " chunks of up to " + chunkSize + " frames.");
+        publishProgress(true);
+    }
+
+    // Encode stage: a frame has been written or skipped
+    public void frameWritten() {
+        framesWritten.incrementAndGet();
+        publishProgress(false);
+    }
+
+    // Stop scheduling; frames still waiting for a chunk are handed to the given consumer
+    public void stop(Consumer<Mat> pendingFrameConsumer) {
+        synchronized (this) {
+            stopped = true;
+            for (int i = 0; i < pendingCount; i++) {
+                pendingFrameConsumer.accept(pendingFrames[i]);
+                pendingFrames[i] = null;
+            }
+            pendingCount = 0;
+        }
+        failed = true;
+        publishProgress(true);
+    }
+
+    public VideoProgress getProgress() {
+        return new VideoProgress(totalFrames, framesRead.get(), framesFiltered.get(), failedFrames.get(), framesWritten.get(),
+                readingFinished, failed, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    private void processChunk(int[] indexes, Mat[] frames, int count) {
+        for (int i = 0; i < count; i++) {
+            if (frameHandler.process(indexes[i], frames[i])) {
+                framesFiltered.incrementAndGet();
+            } else {
+                failedFrames.incrementAndGet();
+            }
+        }
+        publishProgress(false);
+    }
+
+    // Only one update is queued at a time and it reads the counters when it runs, so the FX thread is never flooded
+    private void publishProgress(boolean force) {
+        Consumer<VideoProgress> listener = progressListener;
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!force && now - lastPublishNanos < publishIntervalNanos) {
+            return;
+        }
+        lastPublishNanos = now;
+        if (publishPending.compareAndSet(false, true)) {
+            progressExecutor.execute(() -> {
+                publishPending.set(false);
+                listener.accept(getProgress());
+            });
+        }
+    }
+}
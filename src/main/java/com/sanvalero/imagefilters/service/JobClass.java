@@ -0,0 +1,18 @@
+package com.sanvalero.imagefilters.service;
+
+public enum JobClass {
+    // Priority class of a job, the weight is its share of the threads when several classes are waiting
+    INTERACTIVE(16), // Filters applied from a tab by the user
+    BATCH(4), // Filters applied to images opened from several files or a folder
+    VIDEO(1); // Frames of a video
+
+    private final int weight;
+
+    JobClass(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,186 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+public class JobScheduler {
+    // This class decides which job runs next when several tabs and videos share the threads
+    // Jobs wait in one queue per JobClass and are only handed to the executor when a thread is free (admission control),
+    // so a long video can not queue thousands of frames ahead of an Apply click. The next job comes from the class
+    // with the lowest pass (stride scheduling): every job adds 1 / weight to the pass of its class, so the waiting
+    // classes share the threads in proportion to their weights and none of them starves
+    // Each class is also limited to a number of running jobs; by default a busy class leaves one thread for the rest
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    private static final long STRIDE = 1 << 20;
+
+    private final Executor executor;
+    private final ClassQueue[] queues = new ClassQueue[JobClass.values().length];
+    private final Executor[] classExecutors = new Executor[JobClass.values().length];
+    private int maxConcurrent;
+    private int running = 0;
+    private long virtualTime = 0; // Pass of the last dispatched job, new active classes start from here
+
+    // Jobs of a class waiting to run
+    private static class ClassQueue {
+        private final JobClass jobClass;
+        private final Deque<Runnable> jobs = new ArrayDeque<>();
+        private int running = 0;
+        private int cap = 0; // 0 to use the default cap
+        private long pass = 0;
+        private long dispatched = 0;
+
+        ClassQueue(JobClass jobClass) {
+            this.jobClass = jobClass;
+        }
+    }
+
+    public JobScheduler(Executor executor, int maxConcurrent) {
+        this.executor = executor;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        for (JobClass jobClass : JobClass.values()) {
+            ClassQueue queue = new ClassQueue(jobClass);
+            // Caps can be set with -Dimagefilters.scheduler.<class>.cap=<jobs>, e.g. -Dimagefilters.scheduler.video.cap=2
+            queue.cap = Integer.getInteger("imagefilters.scheduler." + jobClass.name().toLowerCase() + ".cap", 0);
+            queues[jobClass.ordinal()] = queue;
+            classExecutors[jobClass.ordinal()] = command -> submit(jobClass, command);
+        }
+    }
+
+    // Executor that queues its jobs in the given class
+    public Executor getExecutor(JobClass jobClass) {
+        return classExecutors[jobClass.ordinal()];
+    }
+
+    public void submit(JobClass jobClass, Runnable job) {
+        if (executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown()) {
+            throw new RejectedExecutionException("Job scheduler is shut down.");
+        }
+        synchronized (this) {
+            ClassQueue queue = queues[jobClass.ordinal()];
+            if (queue.jobs.isEmpty() && queue.running == 0) {
+                // An idle class does not keep credit from the time it was not asking for threads
+                queue.pass = Math.max(queue.pass, virtualTime);
+            }
+            queue.jobs.addLast(job);
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // Change how many jobs run at the same time; waiting jobs start at once if the limit grows
+    public void setMaxConcurrent(int maxConcurrent) {
+        synchronized (this) {
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+        }
+        dispatch();
+    }
+
+    public synchronized int getCap(JobClass jobClass) {
+        return effectiveCap(queues[jobClass.ordinal()]);
+    }
+
+    // Maximum running jobs of a class (0 to use the default)
+    public void setCap(JobClass jobClass, int cap) {
+        synchronized (this) {
+            queues[jobClass.ordinal()].cap = Math.max(0, cap);
+        }
+        dispatch();
+    }
+
+    public synchronized int getQueueDepth(JobClass jobClass) {
+        return queues[jobClass.ordinal()].jobs.size();
+    }
+
+    public synchronized int getRunningCount(JobClass jobClass) {
+        return queues[jobClass.ordinal()].running;
+    }
+
+    public synchronized String getStats() {
+        StringBuilder stats = new StringBuilder();
+        for (ClassQueue queue : queues) {
+            if (stats.length() > 0) {
+                stats.append(" | ");
+            }
+            stats.append(queue.jobClass.name().toLowerCase())
+                    .append(": ").append(queue.running).append("/").append(effectiveCap(queue)).append(" running, ")
+                    .append(queue.jobs.size()).append(" queued, ")
+                    .append(queue.dispatched).append(" done");
+        }
+        return stats.toString();
+    }
+
+    private int effectiveCap(ClassQueue queue) {
+        if (queue.cap > 0) {
+            return Math.min(queue.cap, maxConcurrent);
+        }
+        // Interactive jobs may use every thread, the others leave one free for them
+        return queue.jobClass == JobClass.INTERACTIVE ? maxConcurrent : Math.max(1, maxConcurrent - 1);
+    }
+
+    // Start as many waiting jobs as there are free threads
+    private void dispatch() {
+        List<Runnable> jobs = new ArrayList<>();
+        List<ClassQueue> jobQueues = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrent) {
+                ClassQueue next = null;
+                for (ClassQueue queue : queues) {
+                    if (!queue.jobs.isEmpty() && queue.running < effectiveCap(queue) && (next == null || queue.pass < next.pass)) {
+                        next = queue;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                virtualTime = next.pass;
+                next.pass += STRIDE / next.jobClass.getWeight();
+                next.running++;
+                next.dispatched++;
+                running++;
+                jobs.add(next.jobs.pollFirst());
+                jobQueues.add(next);
+            }
+        }
+        // The executor is called outside the lock, it may run the job in this thread
+        for (int i = 0; i < jobs.size(); i++) {
+            Runnable job = jobs.get(i);
+            ClassQueue queue = jobQueues.get(i);
+            try {
+                executor.execute(() -> {
+                    try {
+                        job.run();
+                    } finally {
+                        finished(queue);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.warn("A " + queue.jobClass + " job was rejected by the executor: " + e.getMessage());
+                if (job instanceof Future) {
+                    ((Future<?>) job).cancel(false); // JavaFX tasks end as cancelled instead of waiting forever
+                }
+                finished(queue);
+            }
+        }
+    }
+
+    private void finished(ClassQueue queue) {
+        synchronized (this) {
+            queue.running--;
+            running--;
+        }
+        dispatch();
+    }
+}
@@ -0,0 +1,110 @@
+package com.sanvalero.imagefilters.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ReorderBuffer {
+    // This class puts back in order the frames that finish filtering in any order
+    // It is a sliding window over the frame indexes: a frame can only enter the pipeline when its slot in the window
+    // is free, and frames are released as soon as the next expected index arrives
+    private final VideoFrame[] slots; // Frame with index i is stored at i % window
+    private final Lock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+    private final Condition frameArrived = lock.newCondition();
+    private int nextIndex = 0; // Index of the next frame to release
+
+    public ReorderBuffer(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be greater than 0.");
+        }
+        this.slots = new VideoFrame[window];
+    }
+
+    public int getWindow() {
+        return slots.length;
+    }
+
+    public int getNextIndex() {
+        lock.lock();
+        try {
+            return nextIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Wait until the frame fits in the window; returns false if it still does not fit after the timeout
+    public boolean awaitSlot(int index, long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (index >= nextIndex + slots.length) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = slotReleased.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Store a filtered (or failed) frame
+    public void put(VideoFrame frame) {
+        lock.lock();
+        try {
+            int index = frame.getIndex();
+            if (index < nextIndex || index >= nextIndex + slots.length) {
+                throw new IllegalStateException("Frame " + index + " is outside the window [" + nextIndex + ", " + (nextIndex + slots.length) + ").");
+            }
+            slots[index % slots.length] = frame;
+            if (index == nextIndex) {
+                frameArrived.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Release the next frame in order, or return null if it has not arrived after the timeout
+    public VideoFrame takeNext(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            int slot = nextIndex % slots.length;
+            while (slots[slot] == null) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = frameArrived.awaitNanos(remainingNanos);
+            }
+            VideoFrame frame = slots[slot];
+            slots[slot] = null;
+            nextIndex++;
+            slotReleased.signalAll();
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Take out every frame still stored, e.g. to release them after a failure
+    public void clear(Consumer<VideoFrame> consumer) {
+        lock.lock();
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    consumer.accept(slots[i]);
+                    slots[i] = null;
+                }
+            }
+            slotReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
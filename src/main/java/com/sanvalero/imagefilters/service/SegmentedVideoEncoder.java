@@ -0,0 +1,309 @@
+package com.sanvalero.imagefilters.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.opencv.core.Size;
+import org.opencv.videoio.VideoWriter;
+
+public class SegmentedVideoEncoder implements AutoCloseable {
+    // This class is responsible for encoding the filtered frames with several VideoWriters at the same time
+    // Contiguous ranges of segmentFrames frames are dealt round-robin to the encoders, every range is written to its own
+    // temporary file and the files are joined in order into the output video once all of them are written
+    // The files are joined with ffmpeg copying their packets, so this mode is only used when ffmpeg can be run
+    // Every encoder queues up to one range, so up to encoders * segmentFrames frames wait to be encoded
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedVideoEncoder.class);
+
+    // Command used to join the segments without encoding them again, it can be set with -Dimagefilters.ffmpeg=<path>
+    public static final String FFMPEG_COMMAND = System.getProperty("imagefilters.ffmpeg", "ffmpeg");
+
+    private static final Item END = new Item(-1, null);
+
+    private static Boolean ffmpegAvailable; // Checked once, the first time it is needed
+
+    private final VideoPipeline videoPipeline;
+    private final VideoInfo videoInfo;
+    private final int segmentFrames;
+    private final Path segmentDirectory;
+    private final List<BlockingQueue<Item>> queues = new ArrayList<>();
+    private final List<Future<?>> encoders = new ArrayList<>();
+    private final Executor encoderExecutor; // Shared, the encoders are cancelled instead of shutting it down
+    private final CountDownLatch encodersDone;
+    private final Map<Integer, Path> segmentFiles = new ConcurrentSkipListMap<>();
+    private final Map<VideoFrame, AtomicInteger> references = new ConcurrentHashMap<>(); // Queued writes of every frame
+    private volatile Exception failure;
+    private boolean finished = false;
+
+    // A frame to write in the given segment
+    private static class Item {
+        private final int segment;
+        private final VideoFrame frame;
+
+        Item(int segment, VideoFrame frame) {
+            this.segment = segment;
+            this.frame = frame;
+        }
+    }
+
+    // True if ffmpeg can be run to join the segments; without it they would have to be encoded again on one thread,
+    // which is slower than writing the video directly
+    public static synchronized boolean isFfmpegAvailable() {
+        if (ffmpegAvailable == null) {
+            try {
+                Process process = new ProcessBuilder(FFMPEG_COMMAND, "-version")
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                ffmpegAvailable = process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+                if (!ffmpegAvailable) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                ffmpegAvailable = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            logger.info(FFMPEG_COMMAND + (ffmpegAvailable ? " is" : " is not") + " available to join video segments");
+        }
+        return ffmpegAvailable;
+    }
+
+    // Create the temporary directory and start the encoders
+    public static SegmentedVideoEncoder start(VideoPipeline videoPipeline, VideoInfo videoInfo, Executor encoderExecutor,
+                                              int encoderCount, int segmentFrames) throws IOException {
+        SegmentedVideoEncoder encoder = new SegmentedVideoEncoder(videoPipeline, videoInfo, encoderExecutor, encoderCount, segmentFrames);
+        encoder.startEncoders();
+        return encoder;
+    }
+
+    private SegmentedVideoEncoder(VideoPipeline videoPipeline, VideoInfo videoInfo, Executor encoderExecutor, int encoderCount,
+                                  int segmentFrames) throws IOException {
+        this.videoPipeline = videoPipeline;
+        this.videoInfo = videoInfo;
+        this.segmentFrames = Math.max(1, segmentFrames);
+        Path outputPath = new File(videoInfo.getOutputPath()).getAbsoluteFile().toPath();
+        // The segments are written next to the output so joining them does not copy data between disks
+        this.segmentDirectory = Files.createTempDirectory(outputPath.getParent(), outputPath.getFileName() + ".segments");
+        this.encoderExecutor = encoderExecutor;
+        this.encodersDone = new CountDownLatch(encoderCount);
+        for (int i = 0; i < encoderCount; i++) {
+            BlockingQueue<Item> queue = new ArrayBlockingQueue<>(this.segmentFrames + 1);
+            queues.add(queue);
+        }
+    }
+
+    private void startEncoders() {
+        for (BlockingQueue<Item> queue : queues) {
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                try {
+                    encode(queue);
+                } finally {
+                    encodersDone.countDown();
+                }
+                return null;
+            });
+            encoders.add(task);
+            encoderExecutor.execute(task);
+        }
+        logger.info("Encoding video with " + queues.size() + " encoders, " + this.segmentFrames + " frames per segment in " + segmentDirectory);
+    }
+
+    // Queue a frame to be written at the given position of the video; the frame may be written more than once
+    public void write(int index, VideoFrame frame) throws InterruptedException {
+        int segment = index / segmentFrames;
+        BlockingQueue<Item> queue = queues.get(segment % queues.size());
+        // One reference for this write, plus the one of the caller until it calls release
+        references.computeIfAbsent(frame, f -> new AtomicInteger(1)).incrementAndGet();
+        try {
+            enqueue(queue, new Item(segment, frame));
+        } catch (InterruptedException | CancellationException e) {
+            release(frame);
+            throw e;
+        }
+    }
+
+    // The caller does not need the frame anymore, it goes back to the pipeline once its queued writes are done
+    public void release(VideoFrame frame) {
+        AtomicInteger count = references.get(frame);
+        if (count == null) {
+            videoPipeline.releaseFrame(frame); // Never written
+        } else if (count.decrementAndGet() == 0) {
+            references.remove(frame);
+            videoPipeline.releaseFrame(frame);
+        }
+    }
+
+    // Wait until every segment is written and join them into the output video
+    public String finish() throws Exception {
+        for (BlockingQueue<Item> queue : queues) {
+            enqueue(queue, END);
+        }
+        for (Future<?> encoder : encoders) {
+            try {
+                encoder.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        String outputPath = videoInfo.getOutputPath();
+        if (segmentFiles.isEmpty()) {
+            openWriter(Path.of(outputPath)).release(); // No frames were written, the output is an empty video
+        } else {
+            concatWithFfmpeg(outputPath);
+        }
+        finished = true;
+        return outputPath;
+    }
+
+    // Stop the encoders if they are still running and delete the temporary files
+    // The output is only kept if finish succeeded, otherwise it is an incomplete join
+    @Override
+    public void close() {
+        if (failure == null) {
+            failure = new CancellationException("Video encoding was closed.");
+        }
+        for (Future<?> encoder : encoders) {
+            encoder.cancel(true); // Interrupts the encoders waiting for frames
+        }
+        try {
+            encodersDone.await(5, TimeUnit.SECONDS); // Their writers must be released before the files are deleted
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Frames still queued go back to the pipeline
+        for (BlockingQueue<Item> queue : queues) {
+            Item item;
+            while ((item = queue.poll()) != null) {
+                if (item != END) {
+                    release(item.frame);
+                }
+            }
+        }
+        deleteSegments();
+        if (!finished) {
+            try {
+                Files.deleteIfExists(Path.of(videoInfo.getOutputPath()));
+            } catch (IOException e) {
+                logger.warn("Cannot delete incomplete output " + videoInfo.getOutputPath() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Wait while the encoder is busy with its previous segments, unless an encoder failed
+    private void enqueue(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (failure != null) {
+                throw new CancellationException("Video encoding stopped: " + failure.getMessage());
+            }
+        }
+    }
+
+    private void encode(BlockingQueue<Item> queue) throws Exception {
+        VideoWriter writer = null;
+        int currentSegment = -1;
+        try {
+            while (true) {
+                Item item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                try {
+                    if (item.segment != currentSegment) {
+                        if (writer != null) {
+                            writer.release();
+                        }
+                        currentSegment = item.segment;
+                        Path segmentFile = segmentDirectory.resolve(String.format("segment_%06d.mp4", currentSegment));
+                        segmentFiles.put(currentSegment, segmentFile);
+                        writer = openWriter(segmentFile);
+                    }
+                    writer.write(item.frame.getMat());
+                } finally {
+                    release(item.frame);
+                }
+            }
+        } catch (Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+            throw e;
+        } finally {
+            if (writer != null) {
+                writer.release();
+            }
+        }
+    }
+
+    private VideoWriter openWriter(Path path) throws IOException {
+        VideoWriter writer = new VideoWriter(path.toString(), VideoWriteService.FOURCC, videoInfo.getFps(),
+                new Size(videoInfo.getWidth(), videoInfo.getHeight()));
+        if (!writer.isOpened()) {
+            throw new IOException("Cannot open video segment file: " + path);
+        }
+        return writer;
+    }
+
+    // The segments share codec and size, so ffmpeg can join them copying the packets
+    private void concatWithFfmpeg(String outputPath) throws IOException, InterruptedException {
+        Path listFile = segmentDirectory.resolve("segments.txt");
+        Path logFile = segmentDirectory.resolve("ffmpeg.log");
+        List<String> lines = new ArrayList<>();
+        for (Path segment : segmentFiles.values()) {
+            lines.add("file '" + segment.toAbsolutePath().toString().replace("'", "'\\''") + "'");
+        }
+        Files.write(listFile, lines);
+        Process process;
+        try {
+            process = new ProcessBuilder(FFMPEG_COMMAND, "-y", "-loglevel", "error", "-f", "concat", "-safe", "0",
+                    "-i", listFile.toString(), "-c", "copy", outputPath)
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile.toFile())
+                    .start();
+        } catch (IOException e) {
+            throw new IOException("Cannot run " + FFMPEG_COMMAND + " to join the video segments: " + e.getMessage(), e);
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("ffmpeg could not join the video segments (exit code " + exitCode + "): "
+                    + Files.readString(logFile).trim());
+        }
+        logger.info(segmentFiles.size() + " segments joined with ffmpeg into " + outputPath);
+    }
+
+    private void deleteSegments() {
+        try (Stream<Path> files = Files.walk(segmentDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Cannot delete temporary file " + path + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Cannot delete temporary segments in " + segmentDirectory + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sanvalero.imagefilters.service;
+
+import org.opencv.core.Mat;
+
+public class VideoFrame {
+    // This class holds a frame of the video together with its position in the video
+    private final int index;
+    private final Mat mat; // Null if the frame could not be processed
+    private final Exception exception;
+
+    public VideoFrame(int index, Mat mat) {
+        this.index = index;
+        this.mat = mat;
+        this.exception = null;
+    }
+
+    public VideoFrame(int index, Exception exception) {
+        this.index = index;
+        this.mat = null;
+        this.exception = exception;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Mat getMat() {
+        return mat;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    public boolean isFailed() {
+        return mat == null;
+    }
+}
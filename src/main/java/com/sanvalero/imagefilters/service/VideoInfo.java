@@ -0,0 +1,38 @@
+package com.sanvalero.imagefilters.service;
+
+public class VideoInfo {
+    // This class holds the properties of the video being processed
+    private final int totalFrames; // Estimated by the container, the real number is known when reading finishes
+    private final int width;
+    private final int height;
+    private final double fps;
+    private final String outputPath;
+
+    public VideoInfo(int totalFrames, int width, int height, double fps, String outputPath) {
+        this.totalFrames = totalFrames;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.outputPath = outputPath;
+    }
+
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    public String getOutputPath() {
+        return outputPath;
+    }
+}
@@ -0,0 +1,214 @@
+package com.sanvalero.imagefilters.service;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.task.DelayPolicy;
+import com.sanvalero.imagefilters.task.FrameBufferPool;
+import com.sanvalero.imagefilters.task.MatFilterProcessor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+public class VideoPipeline {
+    // This class connects the stages of the video processing: decode (VideoReadService), filter (FrameScheduler) and
+    // encode (VideoWriteService). A ReorderBuffer of queueDepth frames puts them back in order and bounds the frames
+    // alive at the same time, so memory does not depend on the length of the video and encoding starts as soon as
+    // the first frame is filtered
+    private static final Logger logger = LoggerFactory.getLogger(VideoPipeline.class);
+
+    public static final int DEFAULT_QUEUE_DEPTH = 32;
+
+    private final List<Filter> filters;
+    // Frames of this video, so the Mats of written frames are reused to decode new ones; the native memory is freed
+    // when the pipeline is closed
+    private final FrameBufferPool<Mat> matPool = new FrameBufferPool<>("Mat",
+            (width, height, type) -> new Mat(height, width, type),
+            mat -> new FrameBufferPool.Key(mat.cols(), mat.rows(), mat.type()),
+            mat -> mat.total() * mat.elemSize(),
+            Mat::release,
+            FrameBufferPool.DEFAULT_MAX_IDLE_BYTES);
+    private final int queueDepth;
+    private final MatFilterProcessor matFilterProcessor;
+    private final ReorderBuffer reorderBuffer; // Window of frames that have been decoded and not written yet
+    private final FrameScheduler frameScheduler;
+    private final CompletableFuture<VideoInfo> videoInfo = new CompletableFuture<>();
+    private volatile int framesRead = -1; // Unknown until decoding finishes
+    private volatile Exception failure;
+
+    public VideoPipeline(Executor filterExecutor, List<Filter> filters) {
+        this(filterExecutor, filters, DEFAULT_QUEUE_DEPTH, FrameScheduler.DEFAULT_CHUNK_SIZE);
+    }
+
+    public VideoPipeline(Executor filterExecutor, List<Filter> filters, int queueDepth, int chunkSize) {
+        this.filters = filters;
+        this.queueDepth = queueDepth;
+        this.reorderBuffer = new ReorderBuffer(queueDepth);
+        this.matFilterProcessor = new MatFilterProcessor(filters);
+        // A chunk can not be larger than the window, otherwise its last frames would never get a slot
+        this.frameScheduler = new FrameScheduler(filterExecutor, new FrameScheduler.FrameHandler() {
+            @Override
+            public boolean process(int index, Mat frame) {
+                VideoFrame videoFrame = filterFrame(index, frame);
+                storeFrame(videoFrame);
+                return !videoFrame.isFailed();
+            }
+
+            @Override
+            public void reject(int index, Mat frame, Exception exception) {
+                returnMat(frame);
+                storeFrame(new VideoFrame(index, exception));
+            }
+        }, Math.min(chunkSize, queueDepth));
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public FrameScheduler getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    // The tab gets a single aggregated progress object instead of listening to every stage
+    public void setProgressListener(Consumer<VideoProgress> progressListener) {
+        frameScheduler.setProgressListener(progressListener);
+    }
+
+    // Decode stage: publish the properties of the video once it has been opened
+    public void setVideoInfo(VideoInfo info) {
+        frameScheduler.setTotalFrames(info.getTotalFrames());
+        videoInfo.complete(info);
+    }
+
+    // Encode stage: wait until the properties of the video are known
+    public VideoInfo awaitVideoInfo() throws InterruptedException, ExecutionException {
+        return videoInfo.get();
+    }
+
+    // Decode stage: get a Mat of the size of the video to decode the next frame into
+    public Mat leaseMat() {
+        VideoInfo info = videoInfo.getNow(null);
+        if (info == null) {
+            return new Mat();
+        }
+        return matPool.lease(info.getWidth(), info.getHeight(), CvType.CV_8UC3);
+    }
+
+    // Give back a Mat that is not needed anymore so the next frames reuse it
+    public void returnMat(Mat mat) {
+        matPool.release(mat);
+    }
+
+    public FrameBufferPool<Mat> getMatPool() {
+        return matPool;
+    }
+
+    // Encode stage: the video is finished or stopped, free the idle Mats; the ones given back later are freed at once
+    public void close() {
+        matPool.close();
+    }
+
+    // Decode stage: hand a decoded frame to the filter stage, waiting while its slot in the reorder window is taken
+    public void submitFrame(int index, Mat frame) throws InterruptedException {
+        try {
+            if (!reorderBuffer.awaitSlot(index, 0, TimeUnit.MILLISECONDS)) {
+                // The window is full: start the frames waiting for their chunk, the slots are freed as they are written
+                frameScheduler.flush();
+                while (!reorderBuffer.awaitSlot(index, 100, TimeUnit.MILLISECONDS)) {
+                    checkFailure();
+                }
+            }
+            checkFailure();
+        } catch (InterruptedException | CancellationException e) {
+            returnMat(frame);
+            throw e;
+        }
+        frameScheduler.submit(index, frame);
+    }
+
+    // Decode stage: no more frames will be submitted
+    public void finishReading(int frameCount) {
+        logger.info("Video frames read: " + frameCount);
+        frameScheduler.finishReading(frameCount);
+        framesRead = frameCount;
+    }
+
+    public int getFramesRead() {
+        return framesRead;
+    }
+
+    // Encode stage: get the next filtered frame in order, or null if it did not arrive in time
+    public VideoFrame takeNextFrame(long timeout, TimeUnit unit) throws InterruptedException {
+        checkFailure();
+        return reorderBuffer.takeNext(timeout, unit);
+    }
+
+    // Encode stage: the next frame has been written or skipped
+    public void frameWritten() {
+        frameScheduler.frameWritten();
+    }
+
+    // Encode stage: the frame is not needed anymore
+    public void releaseFrame(VideoFrame frame) {
+        if (frame.getMat() != null) {
+            returnMat(frame.getMat());
+        }
+    }
+
+    // Stop every stage, e.g. because one of them failed or the user cancelled
+    public void fail(Exception exception) {
+        if (failure == null) {
+            failure = exception;
+        }
+        videoInfo.completeExceptionally(exception);
+        frameScheduler.stop(this::returnMat);
+        reorderBuffer.clear(this::releaseFrame);
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new CancellationException("Video pipeline stopped: " + failure.getMessage());
+        }
+    }
+
+    private void storeFrame(VideoFrame frame) {
+        if (failure != null) {
+            releaseFrame(frame); // Nobody is going to write it
+            return;
+        }
+        reorderBuffer.put(frame);
+    }
+
+    // The frame is filtered in place, so the decoded Mat is also the one that is encoded
+    private VideoFrame filterFrame(int index, Mat frame) {
+        try {
+            DelayPolicy delayPolicy = DelayPolicy.getDefault();
+            delayPolicy.beforeImage(frame.cols(), frame.rows());
+            matFilterProcessor.process(frame);
+            delayPolicy.afterRows(frame.cols(), frame.rows(), frame.rows());
+            return new VideoFrame(index, frame);
+        } catch (Exception e) {
+            logger.error("Error processing frame " + index + ": " + e.getMessage());
+            returnMat(frame);
+            return new VideoFrame(index, e);
+        }
+    }
+}
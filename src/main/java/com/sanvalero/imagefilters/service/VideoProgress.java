@@ -0,0 +1,84 @@
+package com.sanvalero.imagefilters.service;
+
+public class VideoProgress {
+    // This class is a snapshot of the progress of every stage of a video, published to the tab as a single object
+    private final int totalFrames; // Estimated until reading finishes
+    private final int framesRead;
+    private final int framesFiltered;
+    private final int failedFrames;
+    private final int framesWritten;
+    private final boolean readingFinished;
+    private final boolean failed;
+    private final long elapsedMillis;
+
+    public VideoProgress(int totalFrames, int framesRead, int framesFiltered, int failedFrames, int framesWritten,
+            boolean readingFinished, boolean failed, long elapsedMillis) {
+        this.totalFrames = totalFrames;
+        this.framesRead = framesRead;
+        this.framesFiltered = framesFiltered;
+        this.failedFrames = failedFrames;
+        this.framesWritten = framesWritten;
+        this.readingFinished = readingFinished;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+
+    public int getFramesRead() {
+        return framesRead;
+    }
+
+    public int getFramesFiltered() {
+        return framesFiltered;
+    }
+
+    public int getFailedFrames() {
+        return failedFrames;
+    }
+
+    public int getFramesWritten() {
+        return framesWritten;
+    }
+
+    public boolean isReadingFinished() {
+        return readingFinished;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    // Written frames over the expected ones, between 0 and 1
+    public double getProgress() {
+        int expectedFrames = Math.max(totalFrames, framesRead);
+        return expectedFrames > 0 ? Math.min(1.0, (double) framesWritten / expectedFrames) : 0;
+    }
+
+    public double getFramesPerSecond() {
+        return elapsedMillis > 0 ? framesWritten * 1000.0 / elapsedMillis : 0;
+    }
+
+    public String getMessage() {
+        String message = "Processed frames:  " + (int) (getProgress() * 100) + "%"
+                + "\nRead " + framesRead + (readingFinished ? "" : "/" + totalFrames)
+                + " - Filtered " + framesFiltered
+                + " - Saved " + framesWritten
+                + String.format(" (%.1f fps)", getFramesPerSecond());
+        if (failedFrames > 0) {
+            message += "\n" + failedFrames + " frames failed";
+        }
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return getMessage().replace('\n', ' ');
+    }
+}
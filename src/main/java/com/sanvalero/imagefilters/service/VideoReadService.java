@@ -1,19 +1,21 @@
 package com.sanvalero.imagefilters.service;
 
-import com.sanvalero.imagefilters.controller.VideoTabController;
-import com.sanvalero.imagefilters.filter.Filter;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
@@ -21,36 +23,37 @@ import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
 import org.opencv.core.Mat;
 
-public class VideoReadService extends Service<List<FilterService>> {
-    // This class is responsible for managing the video processing service
-    // It will be used to process the selected video and apply the selected filters
+public class VideoReadService extends Service<Integer> {
+    // This class is responsible for decoding the selected video
+    // Frames are handed one by one to the VideoPipeline, which filters them in chunks while the video is still being read
+    // In segmented mode several decoders read the video at the same time, each one with its own VideoCapture
     private static final Logger logger = LoggerFactory.getLogger(VideoReadService.class);
 
-    private ExecutorService executorService;
+    // Decoders used by default, it can be set with -Dimagefilters.video.decodeSegments=<n> (1 reads the video sequentially)
+    public static final int DEFAULT_DECODE_SEGMENTS = Integer.getInteger("imagefilters.video.decodeSegments", 1);
+    // Frames read by a decoder after each seek, it can be set with -Dimagefilters.video.segmentFrames=<frames>
+    // Every seek decodes again from the keyframe before the frame, so a chunk should span a few keyframe intervals
+    public static final int DEFAULT_SEGMENT_FRAMES = Math.max(1, Integer.getInteger("imagefilters.video.segmentFrames", 60));
+
+    private VideoPipeline videoPipeline;
     private File selectedFile;
-    private List<Filter> filters;
     private int totalFrames;
     private int width;
     private int height;
     private double fps;
     private String outputPath;
+    private int decodeSegments = DEFAULT_DECODE_SEGMENTS;
+    private int segmentFrames = DEFAULT_SEGMENT_FRAMES;
+    private final Executor decoderExecutor; // Runs the decoders of a segmented read
 
-    public VideoReadService() {
-        this.executorService = Executors.newFixedThreadPool(10);
-        this.selectedFile = null;
-        this.filters = null;
-    }
-    
-    public VideoReadService(File selectedFile, List<Filter> filters) {
-        this.executorService = Executors.newFixedThreadPool(10);
+    // The pipeline is set once the decoders are configured, its reorder window depends on them (see getQueueDepth)
+    public VideoReadService(File selectedFile, Executor decoderExecutor) {
         this.selectedFile = selectedFile;
-        this.filters = filters;
+        this.decoderExecutor = decoderExecutor;
     }
 
-    public VideoReadService(ExecutorService executorService, File selectedFile, List<Filter> filters) {
-        this.executorService = executorService;
-        this.selectedFile = selectedFile;
-        this.filters = filters;
+    public void setVideoPipeline(VideoPipeline videoPipeline) {
+        this.videoPipeline = videoPipeline;
     }
 
     public File getSelectedFile() {
@@ -77,54 +80,231 @@ public class VideoReadService extends Service<List<FilterService>> {
         return outputPath;
     }
 
-    public void setExecutionParameters(File selectedFile, List<Filter> filters) {
-        // Set the parameters for the video processing
-        logger.info("Setting execution parameters for VideoService...");
-        this.selectedFile = selectedFile;
-        this.filters = filters;
+    public int getDecodeSegments() {
+        return decodeSegments;
+    }
+
+    public void setDecodeSegments(int decodeSegments) {
+        this.decodeSegments = Math.max(1, decodeSegments);
+    }
+
+    public int getSegmentFrames() {
+        return segmentFrames;
+    }
+
+    public void setSegmentFrames(int segmentFrames) {
+        this.segmentFrames = Math.max(1, segmentFrames);
+    }
+
+    // Reorder window the pipeline needs for the decoders of this service
+    public int getQueueDepth() {
+        return getQueueDepthFor(decodeSegments, segmentFrames);
+    }
+
+    // Reorder window needed so that every decoder can read a whole chunk at the same time as the others
+    public static int getQueueDepthFor(int decodeSegments, int segmentFrames) {
+        if (decodeSegments <= 1) {
+            return VideoPipeline.DEFAULT_QUEUE_DEPTH;
+        }
+        return Math.max(VideoPipeline.DEFAULT_QUEUE_DEPTH, decodeSegments * Math.max(1, segmentFrames));
     }
 
     @Override
-    protected Task<List<FilterService>> createTask() {
+    protected Task<Integer> createTask() {
         logger.info("Creating VideoReadTask...");
         return new Task<>() {
             @Override
-            protected List<FilterService> call() throws Exception {
+            protected Integer call() throws Exception {
                 updateMessage("Starting video frames reading...");
                 logger.debug("Setting up video for frames reading...");
                 VideoCapture capture = new VideoCapture(selectedFile.getAbsolutePath());
-                if (!capture.isOpened()) {
-                    throw new IOException("Cannot open video file: " + selectedFile.getAbsolutePath());
-                }
-                totalFrames = (int) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
-                width = (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
-                height = (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
-                fps = capture.get(Videoio.CAP_PROP_FPS);
-                outputPath = getOutputPathUpdated();
-                logger.info("Video properties: total frames = {}, width = {}, height = {}, fps = {}", totalFrames, width, height, fps);
-                logger.debug("Getting video frames...");
-                Mat frame = new Mat();
                 int frameCount = 0;
-                List<FilterService> filterServices = new ArrayList<>();
-                while (capture.read(frame)) {
-                    Mat currentFrame = frame.clone();
-                    BufferedImage bufferedImage = VideoTabController.matToBufferedImage(currentFrame);
-                    FilterService filterService = new FilterService(frameCount, bufferedImage, filters);
-                    filterService.setExecutor(executorService);
-                    filterServices.add(filterService);
-                    frameCount++;
-                    // Update the progress of the task
-                    updateProgress(frameCount, totalFrames);
-                    // Update the message to show the progress in %
-                    updateMessage("Read frames: " + (frameCount * 100 / totalFrames) + "%");
+                try {
+                    if (!capture.isOpened()) {
+                        throw new IOException("Cannot open video file: " + selectedFile.getAbsolutePath());
+                    }
+                    totalFrames = (int) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+                    width = (int) capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+                    height = (int) capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+                    fps = capture.get(Videoio.CAP_PROP_FPS);
+                    outputPath = getOutputPathUpdated();
+                    logger.info("Video properties: total frames = {}, width = {}, height = {}, fps = {}", totalFrames, width, height, fps);
+                    videoPipeline.setVideoInfo(new VideoInfo(totalFrames, width, height, fps, outputPath));
+                    logger.debug("Getting video frames...");
+                    if (decodeSegments > 1) {
+                        capture.release(); // Every decoder opens its own capture
+                        frameCount = readSegmented(this::isCancelled);
+                    } else {
+                        while (!isCancelled()) {
+                            // Decode straight into a pooled Mat; the filter stage modifies it in place
+                            Mat frame = videoPipeline.leaseMat();
+                            if (!capture.read(frame)) {
+                                videoPipeline.returnMat(frame);
+                                break;
+                            }
+                            // This call waits while the frame does not fit in the pipeline
+                            videoPipeline.submitFrame(frameCount, frame);
+                            frameCount++;
+                        }
+                    }
+                    if (isCancelled()) {
+                        throw new CancellationException("Video reading was cancelled.");
+                    }
+                } catch (Exception e) {
+                    videoPipeline.fail(e);
+                    throw e;
+                } finally {
+                    capture.release();
                 }
-                capture.release();
+                videoPipeline.finishReading(frameCount);
                 logger.info("Video frames read successfully.");
-                return filterServices;
+                return frameCount;
             }
         };
     }
 
+    // The video is split in chunks of segmentFrames frames that are dealt round-robin to the decoders: decoder k reads
+    // chunks k, k + n, k + 2n... The reorder window holds n chunks (see getQueueDepthFor), so each decoder reads one
+    // contiguous range of every window without waiting for the others and seeks once per window; a chunk can not be
+    // longer, the frames after the window would have to be kept in memory until the writer reaches them
+    // Every frame index belongs to exactly one chunk
+    private int readSegmented(BooleanSupplier cancelled) throws Exception {
+        int segments = decodeSegments;
+        int chunkFrames = segmentFrames;
+        if ((long) chunkFrames * segments > videoPipeline.getQueueDepth()) {
+            chunkFrames = Math.max(1, videoPipeline.getQueueDepth() / segments);
+            logger.warn("Segments of " + segmentFrames + " frames do not fit in the pipeline, using " + chunkFrames + " frames.");
+        }
+        logger.info("Decoding video with " + segments + " decoders, " + chunkFrames + " frames per seek...");
+        SegmentState state = new SegmentState();
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(decoderExecutor);
+        List<Future<Void>> decoders = new ArrayList<>();
+        try {
+            for (int decoder = 0; decoder < segments; decoder++) {
+                int firstChunk = decoder;
+                int frames = chunkFrames;
+                decoders.add(completionService.submit(() -> {
+                    try {
+                        readChunks(firstChunk, segments, frames, state, cancelled);
+                    } catch (Exception e) {
+                        videoPipeline.fail(e); // Wake up the other decoders
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+            // The first decoder that fails is the cause, the others fail because the pipeline stopped
+            for (int i = 0; i < segments; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            for (Future<Void> decoder : decoders) {
+                decoder.cancel(true); // Interrupts the decoders still waiting for a slot
+            }
+        }
+        int frameCount = state.endIndex.get() == Integer.MAX_VALUE ? 0 : state.endIndex.get();
+        // Every index below the end must have been decoded exactly once
+        if (state.framesDecoded.get() != frameCount) {
+            throw new IOException("Segment boundaries do not match: " + state.framesDecoded.get() + " frames decoded for " + frameCount + " frames.");
+        }
+        return frameCount;
+    }
+
+    private void readChunks(int firstChunk, int segments, int chunkFrames, SegmentState state, BooleanSupplier cancelled) throws Exception {
+        VideoCapture capture = new VideoCapture(selectedFile.getAbsolutePath());
+        try {
+            if (!capture.isOpened()) {
+                throw new IOException("Cannot open video file: " + selectedFile.getAbsolutePath());
+            }
+            int position = 0; // Index of the frame that the next read returns
+            for (long chunk = firstChunk; chunk * chunkFrames < state.endIndex.get(); chunk += segments) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Video reading was cancelled.");
+                }
+                int start = (int) (chunk * chunkFrames);
+                position = seek(capture, start, position);
+                if (position < start) {
+                    state.reachEnd(position); // The video ends before this chunk
+                    return;
+                }
+                for (int index = start; index < start + chunkFrames; index++) {
+                    Mat frame = videoPipeline.leaseMat();
+                    if (!capture.read(frame)) {
+                        videoPipeline.returnMat(frame);
+                        state.reachEnd(index);
+                        return;
+                    }
+                    position++;
+                    state.frameRead(index);
+                    videoPipeline.submitFrame(index, frame);
+                }
+                // The capture must still be where the chunk ends, otherwise the seek landed on another frame
+                int reportedPosition = (int) capture.get(Videoio.CAP_PROP_POS_FRAMES);
+                if (reportedPosition != position) {
+                    throw new IOException("Decoder lost its position after frame " + (position - 1) + " (reported " + reportedPosition
+                            + "), the video can not be decoded in segments.");
+                }
+            }
+        } finally {
+            capture.release();
+        }
+    }
+
+    // Move the capture so that the next read returns the target frame, checking where it actually landed
+    private int seek(VideoCapture capture, int target, int position) throws IOException {
+        if (position == target) {
+            return position;
+        }
+        // The backend jumps to the previous keyframe and decodes forward up to the requested frame
+        capture.set(Videoio.CAP_PROP_POS_FRAMES, target);
+        position = (int) capture.get(Videoio.CAP_PROP_POS_FRAMES);
+        if (position > target) {
+            // Overshot: seek back once, as far before the frame as it landed after it, and skip forward from there
+            int retry = Math.max(0, target - 2 * (position - target));
+            logger.debug("Seek to frame " + target + " landed on " + position + ", seeking to frame " + retry + "...");
+            capture.set(Videoio.CAP_PROP_POS_FRAMES, retry);
+            position = (int) capture.get(Videoio.CAP_PROP_POS_FRAMES);
+        }
+        if (position > target || position < 0) {
+            throw new IOException("Cannot seek to frame " + target + " (reported " + position
+                    + "), the video can not be decoded in segments.");
+        }
+        // Landed before the frame (e.g. on a keyframe, or at the end of the video): skip frames one by one
+        while (position < target && capture.grab()) {
+            position++;
+        }
+        return position;
+    }
+
+    // Shared by the decoders of a segmented read
+    private static class SegmentState {
+        private final AtomicInteger endIndex = new AtomicInteger(Integer.MAX_VALUE); // Number of frames, once known
+        private final AtomicInteger lastFrameRead = new AtomicInteger(-1);
+        private final AtomicInteger framesDecoded = new AtomicInteger();
+
+        // A decoder read a frame; no frame can exist at or after the end of the video
+        void frameRead(int index) throws IOException {
+            framesDecoded.incrementAndGet();
+            lastFrameRead.accumulateAndGet(index, Math::max);
+            if (index >= endIndex.get()) {
+                throw new IOException("Frame " + index + " was decoded after the video ended at frame " + endIndex.get() + ".");
+            }
+        }
+
+        // A decoder could not read the given frame, so the video has at most that many frames
+        void reachEnd(int index) throws IOException {
+            endIndex.accumulateAndGet(index, Math::min);
+            // If another decoder already read a later frame, this one failed in the middle of the video
+            if (lastFrameRead.get() >= index) {
+                throw new IOException("Frame " + index + " could not be decoded but frame " + lastFrameRead.get() + " could.");
+            }
+        }
+    }
+
     public String getOutputPathUpdated() {
         // Get the output file path for the processed video
         return selectedFile.getParent() 
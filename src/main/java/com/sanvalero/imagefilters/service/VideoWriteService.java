@@ -1,34 +1,66 @@
 package com.sanvalero.imagefilters.service;
 
+import com.sanvalero.imagefilters.task.FrameBufferPool;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import org.opencv.videoio.VideoWriter;
-import org.opencv.core.Mat;
 import org.opencv.core.Size;
 
 public class VideoWriteService extends Service<String> {
-    // This class is responsible for managing the video processing service
-    // It will be used to process the selected video and apply the selected filters
+    // This class is responsible for encoding the filtered frames of the VideoPipeline
+    // It starts as soon as the first frame is filtered and writes the frames in their original order
+    // In segmented mode several encoders write ranges of frames to temporary files that are joined at the end with
+    // ffmpeg; if it is not available the video is written directly
     private static final Logger logger = LoggerFactory.getLogger(VideoWriteService.class);
 
-    private VideoReadService videoReadService;
-    private Map<Integer, Mat> matFramesMap = new HashMap<>();
-    private Map<Integer, Mat> matFramesFailedMap = new HashMap<>();
-    private final String outputPath;
-    
-
-    public VideoWriteService(VideoReadService videoReadService, Map<Integer, Mat> matFramesMap, Map<Integer, Mat> matFramesFailedMap) {
-        this.matFramesMap = matFramesMap;
-        this.matFramesFailedMap = matFramesFailedMap;
-        this.outputPath = videoReadService.getOutputPathUpdated();
-        this.videoReadService = videoReadService;
+    public static final int FOURCC = VideoWriter.fourcc('m', 'p', '4', 'v');
+    // Encoders used by default, it can be set with -Dimagefilters.video.encodeSegments=<n> (1 writes the video directly)
+    public static final int DEFAULT_ENCODE_SEGMENTS = Integer.getInteger("imagefilters.video.encodeSegments", 1);
+    // Frames of every temporary file, it can be set with -Dimagefilters.video.encodeSegmentFrames=<frames>
+    public static final int DEFAULT_ENCODE_SEGMENT_FRAMES = Integer.getInteger("imagefilters.video.encodeSegmentFrames", 64);
+
+    private VideoPipeline videoPipeline;
+    private FrameFailurePolicy failurePolicy = FrameFailurePolicy.getDefault(); // What to do with frames that failed to process
+    private int encodeSegments = DEFAULT_ENCODE_SEGMENTS;
+    private int encodeSegmentFrames = DEFAULT_ENCODE_SEGMENT_FRAMES;
+    private final Executor encoderExecutor; // Runs the encoders in segmented mode
+
+    public VideoWriteService(VideoPipeline videoPipeline, Executor encoderExecutor) {
+        this.videoPipeline = videoPipeline;
+        this.encoderExecutor = encoderExecutor;
+    }
+
+    public FrameFailurePolicy getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    public void setFailurePolicy(FrameFailurePolicy failurePolicy) {
+        this.failurePolicy = failurePolicy;
+    }
+
+    public int getEncodeSegments() {
+        return encodeSegments;
+    }
+
+    public void setEncodeSegments(int encodeSegments) {
+        this.encodeSegments = Math.max(1, encodeSegments);
+    }
+
+    public int getEncodeSegmentFrames() {
+        return encodeSegmentFrames;
+    }
+
+    public void setEncodeSegmentFrames(int encodeSegmentFrames) {
+        this.encodeSegmentFrames = encodeSegmentFrames;
     }
 
     @Override
@@ -37,43 +69,116 @@ public class VideoWriteService extends Service<String> {
         return new Task<>() {
             @Override
             protected String call() throws Exception {
-                updateMessage("Starting video saving...");
+                updateMessage("Waiting for video frames...");
+                VideoInfo videoInfo = videoPipeline.awaitVideoInfo();
                 logger.info("Setting up video saving...");
-                VideoWriter writer = new VideoWriter(
-                        outputPath,
-                        VideoWriter.fourcc('m', 'p', '4', 'v'),
-                        videoReadService.getFps(),
-                        new Size(videoReadService.getWidth(), videoReadService.getHeight())
-                );
-                if (!writer.isOpened()) {
-                    throw new IOException("Cannot open output video file.");
-                }
-                // Write the processed frames to the output video file
-                for (int i = 0; i < videoReadService.getTotalFrames(); i++) {
-                    if (matFramesFailedMap.containsKey(i)) {
-                        updateMessage("Frame " + i + " failed to process. Skipping...");
-                        logger.error("Frame " + i + " failed to process. Skipping...");
-                        continue;
+                FrameFailurePolicy policy = failurePolicy;
+                VideoWriter writer = null;
+                SegmentedVideoEncoder encoder = null; // Used instead of the writer in segmented mode
+                VideoFrame previousFrame = null; // Kept to duplicate it if the next frame fails
+                int failedFrames = 0;
+                try {
+                    boolean segmented = encodeSegments > 1;
+                    if (segmented && !SegmentedVideoEncoder.isFfmpegAvailable()) {
+                        logger.warn("Cannot join video segments without " + SegmentedVideoEncoder.FFMPEG_COMMAND
+                                + ", writing the video with a single encoder");
+                        segmented = false;
                     }
-                    if (matFramesMap.containsKey(i)) {
-                        logger.debug("Writing frame " + i + "...");
+                    if (segmented) {
+                        encoder = SegmentedVideoEncoder.start(videoPipeline, videoInfo, encoderExecutor, encodeSegments, encodeSegmentFrames);
                     } else {
-                        updateMessage("Frame " + i + " not found. Skipping...");
-                        logger.error("Frame " + i + " not found. Skipping...");
-                        continue;
+                        writer = new VideoWriter(
+                                videoInfo.getOutputPath(),
+                                FOURCC,
+                                videoInfo.getFps(),
+                                new Size(videoInfo.getWidth(), videoInfo.getHeight())
+                        );
+                        if (!writer.isOpened()) {
+                            throw new IOException("Cannot open output video file.");
+                        }
+                    }
+                    // The reorder buffer releases the frames in order as soon as the next one is filtered
+                    int nextFrame = 0;
+                    while (videoPipeline.getFramesRead() < 0 || nextFrame < videoPipeline.getFramesRead()) {
+                        if (isCancelled()) {
+                            throw new CancellationException("Video saving was cancelled.");
+                        }
+                        VideoFrame frame = videoPipeline.takeNextFrame(100, TimeUnit.MILLISECONDS);
+                        if (frame == null) {
+                            continue;
+                        }
+                        if (frame.isFailed()) {
+                            failedFrames++;
+                            switch (policy) {
+                                case ABORT:
+                                    throw new IOException("Frame " + nextFrame + " failed to process.", frame.getException());
+                                case DUPLICATE_PREVIOUS:
+                                    if (previousFrame != null) {
+                                        logger.error("Frame " + nextFrame + " failed to process. Writing previous frame...");
+                                        writeFrame(writer, encoder, nextFrame, previousFrame);
+                                        break;
+                                    }
+                                    logger.error("Frame " + nextFrame + " failed to process and there is no previous frame. Skipping...");
+                                    break;
+                                default:
+                                    logger.error("Frame " + nextFrame + " failed to process. Skipping...");
+                                    break;
+                            }
+                        } else {
+                            logger.debug("Writing frame " + nextFrame + "...");
+                            writeFrame(writer, encoder, nextFrame, frame);
+                            if (previousFrame != null) {
+                                releaseFrame(encoder, previousFrame);
+                            }
+                            previousFrame = frame;
+                        }
+                        nextFrame++;
+                        videoPipeline.frameWritten(); // The progress of every stage is published by the pipeline
+                    }
+                    if (encoder != null) {
+                        updateMessage("Joining video segments...");
+                        encoder.finish();
+                    }
+                } catch (Exception e) {
+                    videoPipeline.fail(e);
+                    throw e;
+                } finally {
+                    if (previousFrame != null) {
+                        releaseFrame(encoder, previousFrame);
                     }
-                    Mat filteredMat = matFramesMap.get(i);
-                    if (filteredMat != null) {
-                        writer.write(filteredMat);
-                        updateMessage("Saved frames:  " + ((int) ((double) i / videoReadService.getTotalFrames() * 100)) + "%");
-                        updateProgress(i, videoReadService.getTotalFrames());
+                    if (writer != null) {
+                        writer.release();
                     }
+                    if (encoder != null) {
+                        encoder.close(); // Deletes the temporary segments, and the output if it was not completed
+                    }
+                    logger.info(videoPipeline.getMatPool().getStats());
+                    videoPipeline.close();
+                }
+                logger.info(FrameBufferPool.BYTE_ARRAYS.getStats());
+                if (failedFrames > 0) {
+                    logger.warn(failedFrames + " frames failed to process (policy: " + policy + ").");
                 }
-                writer.release();
                 updateMessage("Done!");
-                return outputPath;
+                return videoInfo.getOutputPath();
             }
         };
     }
 
+    private void writeFrame(VideoWriter writer, SegmentedVideoEncoder encoder, int index, VideoFrame frame) throws InterruptedException {
+        if (encoder != null) {
+            encoder.write(index, frame); // The encoder keeps the frame until it has been written
+        } else {
+            writer.write(frame.getMat());
+        }
+    }
+
+    private void releaseFrame(SegmentedVideoEncoder encoder, VideoFrame frame) {
+        if (encoder != null) {
+            encoder.release(frame);
+        } else {
+            videoPipeline.releaseFrame(frame);
+        }
+    }
+
 }
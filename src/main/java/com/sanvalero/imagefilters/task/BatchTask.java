@@ -0,0 +1,46 @@
+package com.sanvalero.imagefilters.task;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sanvalero.imagefilters.batch.BatchRunner;
+import com.sanvalero.imagefilters.batch.BatchStatistics;
+
+import javafx.concurrent.Task;
+
+public class BatchTask extends Task<BatchStatistics> {
+    // This class runs a folder batch from the main window and publishes how many images are done
+    private static final Logger logger = LoggerFactory.getLogger(BatchTask.class);
+
+    private final BatchRunner runner;
+    private final long totalImages;
+
+    public BatchTask(BatchRunner runner, long totalImages) {
+        this.runner = runner;
+        this.totalImages = totalImages;
+    }
+
+    @Override
+    protected BatchStatistics call() throws Exception {
+        updateMessage("Starting batch...");
+        AtomicLong done = new AtomicLong();
+        ProgressReporter progressReporter = new ProgressReporter((count, total, percent) -> {
+            updateProgress(count, total);
+            updateMessage(count + " of " + total + " images");
+        });
+        runner.setImageListener((file, target, error) -> progressReporter.report(done.incrementAndGet(), totalImages));
+        BatchStatistics statistics = runner.run();
+        logger.info("Batch finished:\n" + statistics.getSummary());
+        updateMessage("Done!");
+        return statistics;
+    }
+
+    // Stop the batch instead of only interrupting the thread listing the files
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        runner.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
@@ -0,0 +1,100 @@
+package com.sanvalero.imagefilters.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public abstract class DelayPolicy {
+    // This class decides the artificial delay added while filtering an image
+    // The coursework used a per column delay to force concurrency; production runs without any delay
+    // The default can be set with -Dimagefilters.delay=none|fixed:<ms>|column:<ms>
+    private static final Logger logger = LoggerFactory.getLogger(DelayPolicy.class);
+
+    public static final DelayPolicy NONE = new DelayPolicy("none") {
+    };
+
+    private static volatile DelayPolicy defaultPolicy = parseDefault(System.getProperty("imagefilters.delay", "none"));
+
+    private final String description;
+
+    private DelayPolicy(String description) {
+        this.description = description;
+    }
+
+    public static DelayPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    public static void setDefault(DelayPolicy delayPolicy) {
+        defaultPolicy = delayPolicy;
+    }
+
+    // Sleep once per image, whatever its size
+    public static DelayPolicy fixed(long millis) {
+        return new DelayPolicy("fixed:" + millis) {
+            @Override
+            public void beforeImage(int width, int height) throws InterruptedException {
+                Thread.sleep(millis);
+            }
+        };
+    }
+
+    // Sleep for every column of the image (demo behaviour), spread over the processed rows
+    public static DelayPolicy perColumn(long millis) {
+        return new DelayPolicy("column:" + millis) {
+            @Override
+            public void afterRows(int width, int height, int rows) throws InterruptedException {
+                Thread.sleep(millis * width * rows / height);
+            }
+        };
+    }
+
+    public static DelayPolicy parse(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":");
+        switch (parts[0]) {
+            case "none":
+                return NONE;
+            case "fixed":
+                return fixed(parts.length > 1 ? parseMillis(parts[1], spec) : 500);
+            case "column":
+                return perColumn(parts.length > 1 ? parseMillis(parts[1], spec) : 10);
+            default:
+                throw new IllegalArgumentException("Unknown delay policy: " + spec);
+        }
+    }
+
+    private static long parseMillis(String text, String spec) {
+        long millis;
+        try {
+            millis = Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid delay policy: " + spec, e);
+        }
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative delay in policy: " + spec);
+        }
+        return millis;
+    }
+
+    // A wrong system property must not stop the filter classes from loading, so it falls back to no delay
+    private static DelayPolicy parseDefault(String spec) {
+        try {
+            return parse(spec);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage() + ", filtering without delay.");
+            return NONE;
+        }
+    }
+
+    // Called once before the image is filtered
+    public void beforeImage(int width, int height) throws InterruptedException {
+    }
+
+    // Called every time a group of rows has been filtered
+    public void afterRows(int width, int height, int rows) throws InterruptedException {
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
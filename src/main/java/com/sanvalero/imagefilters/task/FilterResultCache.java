@@ -0,0 +1,208 @@
+package com.sanvalero.imagefilters.task;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+import com.sanvalero.imagefilters.filter.FilterFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FilterResultCache {
+    // This class keeps the images obtained by applying the first filters of a chain to a source image, so a chain that
+    // starts like one already applied only computes its remaining filters
+    // Entries are keyed by the identity of the source and the text form of the filters with their parameters; the least
+    // recently used ones are dropped once the cached images use more than the budget, shared by all the tabs
+    // The budget can be set with -Dimagefilters.cache.MB=<MB> (256), 0 disables the cache
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("imagefilters.cache.MB", 256L) * 1024 * 1024;
+
+    public static final FilterResultCache SHARED = new FilterResultCache(DEFAULT_MAX_BYTES);
+
+    // Longest cached prefix of a chain; the image belongs to the cache and must only be read
+    public static class Match {
+        private final int length;
+        private final BufferedImage image;
+
+        Match(int length, BufferedImage image) {
+            this.length = length;
+            this.image = image;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true); // In access order
+    private final Map<Object, Long> sourceIds = new WeakHashMap<>(); // Images keep no equals, so this is by identity
+    private long nextSourceId = 1;
+    private long bytes = 0;
+    private final AtomicLong hits = new AtomicLong(); // The whole chain was cached
+    private final AtomicLong prefixHits = new AtomicLong(); // Only its first filters were cached
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public FilterResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    // Number of filters at the start of the chain that can be cached, filters of unknown types have no known parameters
+    public static int getCacheableLength(List<Filter> filters) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (FilterFactory.describe(filters.get(i)).getType() == FilterDescriptor.Type.OTHER) {
+                return i;
+            }
+        }
+        return filters.size();
+    }
+
+    // Find the longest prefix of the chain cached for the source, null if none is
+    public synchronized Match lookup(Object source, List<Filter> filters) {
+        Long sourceId = sourceIds.get(source);
+        int length = getCacheableLength(filters);
+        if (sourceId != null) {
+            for (int i = length; i > 0; i--) {
+                BufferedImage image = entries.get(getKey(sourceId, filters, i));
+                if (image != null) {
+                    (i == filters.size() ? hits : prefixHits).incrementAndGet();
+                    return new Match(i, image);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Keep a copy of the result of the first filters of the chain; the image itself stays with the caller
+    public void put(Object source, List<Filter> filters, int length, BufferedImage image) {
+        long size = getSize(image);
+        if (size > maxBytes || length == 0 || length > getCacheableLength(filters)) {
+            return;
+        }
+        BufferedImage copy = new BufferedImage(image.getColorModel(), image.copyData(null),
+                image.isAlphaPremultiplied(), null); // Copied outside the lock
+        synchronized (this) {
+            Long sourceId = sourceIds.get(source);
+            if (sourceId == null) {
+                sourceId = nextSourceId++;
+                sourceIds.put(source, sourceId);
+            }
+            BufferedImage previous = entries.put(getKey(sourceId, filters, length), copy);
+            if (previous != null) {
+                bytes -= getSize(previous);
+            }
+            bytes += size;
+            purgeCollectedSources();
+            // Drop the least recently used images until the new one fits
+            Iterator<BufferedImage> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                BufferedImage cached = eldest.next();
+                if (cached == copy) {
+                    continue;
+                }
+                eldest.remove();
+                bytes -= getSize(cached);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // Drop the entries of a source that will not be filtered again
+    public synchronized void invalidate(Object source) {
+        Long sourceId = sourceIds.remove(source);
+        if (sourceId == null) {
+            return;
+        }
+        String prefix = sourceId + ":";
+        Iterator<Map.Entry<String, BufferedImage>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                bytes -= getSize(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    // Drop the entries of the sources that were garbage collected, nobody can ask for them anymore
+    private void purgeCollectedSources() {
+        Set<String> liveIds = new HashSet<>();
+        for (Long sourceId : sourceIds.values()) {
+            liveIds.add(sourceId.toString());
+        }
+        Iterator<Map.Entry<String, BufferedImage>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = iterator.next();
+            if (!liveIds.contains(entry.getKey().substring(0, entry.getKey().indexOf(':')))) {
+                bytes -= getSize(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sourceIds.clear();
+        bytes = 0;
+    }
+
+    private static String getKey(long sourceId, List<Filter> filters, int length) {
+        StringBuilder key = new StringBuilder().append(sourceId).append(':');
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(FilterFactory.describe(filters.get(i)));
+        }
+        return key.toString();
+    }
+
+    private static long getSize(BufferedImage image) {
+        return FrameBufferPool.getImageBytes(image);
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getPrefixHitCount() {
+        return prefixHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public String getStats() {
+        return "Filter result cache: " + getEntryCount() + " images (" + getBytes() / (1024 * 1024) + " of "
+                + maxBytes / (1024 * 1024) + " MB), " + getHitCount() + " hits, " + getPrefixHitCount()
+                + " prefix hits, " + getMissCount() + " misses, " + getEvictionCount() + " evictions";
+    }
+}
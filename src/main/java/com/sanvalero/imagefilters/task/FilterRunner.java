@@ -0,0 +1,169 @@
+package com.sanvalero.imagefilters.task;
+
+import com.sanvalero.imagefilters.filter.Filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+public class FilterRunner {
+    // This class applies a filter chain to one image without JavaFX, so FilterTask and the command line share it
+    // Big images are split in row bands filtered in parallel, the others are processed in row-major tiles
+    // With a result cache, the longest cached prefix of the chain is reused and the chain without its last filter is
+    // cached too, so changing only the last filter does not filter the image from the start
+    private static final Logger logger = LoggerFactory.getLogger(FilterRunner.class);
+
+    private final BufferedImage image;
+    private final List<Filter> filters;
+    private final long parallelThreshold;
+    private final ForkJoinPool forkJoinPool;
+    private DelayPolicy delayPolicy = DelayPolicy.getDefault(); // Artificial delay, none by default
+    private ProgressReporter progressReporter; // Null when nobody follows the progress
+    private BooleanSupplier cancelled = () -> false;
+    private final AtomicLong processedPixels = new AtomicLong();
+    private long totalPixels; // Pixels of every pass over the image
+    private FilterResultCache resultCache; // Null to always filter the whole chain
+    private Object cacheSource; // Identity of the image in the cache
+
+    public FilterRunner(BufferedImage image, List<Filter> filters, long parallelThreshold, ForkJoinPool forkJoinPool) {
+        this.image = image;
+        this.filters = filters;
+        this.parallelThreshold = parallelThreshold;
+        this.forkJoinPool = forkJoinPool; // Null to use the pool running the filter, or the common pool
+    }
+
+    public void setDelayPolicy(DelayPolicy delayPolicy) {
+        this.delayPolicy = delayPolicy;
+    }
+
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    // Checked before every tile, the filter stops with a CancellationException once it returns true
+    public void setCancelled(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    // The source identifies the image in the cache, it must not be changed while it is cached
+    public void setResultCache(FilterResultCache resultCache, Object cacheSource) {
+        this.resultCache = resultCache;
+        this.cacheSource = cacheSource;
+    }
+
+    public long getProcessedPixels() {
+        return processedPixels.get();
+    }
+
+    // Apply the filters and return the filtered image, leased from FrameBufferPool.IMAGES
+    public BufferedImage run() throws InterruptedException {
+        processedPixels.set(0);
+        totalPixels = (long) image.getWidth() * image.getHeight();
+        if (resultCache == null || !resultCache.isEnabled() || cacheSource == null) {
+            return filter(image, filters);
+        }
+        FilterResultCache.Match match = resultCache.lookup(cacheSource, filters);
+        int cachedLength = match != null ? match.getLength() : 0;
+        BufferedImage input = match != null ? match.getImage() : image;
+        BufferedImage filteredImage;
+        if (cachedLength == filters.size()) {
+            // Copy the cached result, the caller gives the returned image back to the pool
+            filteredImage = FrameBufferPool.IMAGES.lease(input.getWidth(), input.getHeight(), input.getType());
+            input.copyData(filteredImage.getRaster());
+            processedPixels.set(totalPixels);
+        } else if (filters.size() - cachedLength > 1 && filters.size() - 1 <= FilterResultCache.getCacheableLength(filters)) {
+            totalPixels *= 2; // The image is filtered twice
+            BufferedImage prefixImage = filter(input, filters.subList(cachedLength, filters.size() - 1));
+            resultCache.put(cacheSource, filters, filters.size() - 1, prefixImage);
+            filteredImage = filter(prefixImage, filters.subList(filters.size() - 1, filters.size()));
+            FrameBufferPool.IMAGES.release(prefixImage);
+            resultCache.put(cacheSource, filters, filters.size(), filteredImage);
+        } else {
+            filteredImage = filter(input, filters.subList(cachedLength, filters.size()));
+            resultCache.put(cacheSource, filters, filters.size(), filteredImage);
+        }
+        logger.debug(resultCache.getStats());
+        return filteredImage;
+    }
+
+    private BufferedImage filter(BufferedImage input, List<Filter> chain) throws InterruptedException {
+        // Convert the image once if needed and get direct access to its backing arrays
+        RasterFilterProcessor processor = new RasterFilterProcessor(input, chain);
+        int height = processor.getHeight();
+        long imageSize = (long) processor.getWidth() * height;
+        delayPolicy.beforeImage(processor.getWidth(), height);
+        if (imageSize >= parallelThreshold && height > RasterFilterProcessor.TILE_ROWS) {
+            // Split the image in row bands and filter them in parallel, every band writes its own rows of the result
+            logger.info("Image has " + imageSize + " pixels, filtering it in parallel...");
+            ForkJoinPool pool = forkJoinPool;
+            if (pool == null) {
+                // On a work-stealing executor the bands are split on the same pool, otherwise on the common one
+                pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+            }
+            pool.invoke(new FilterBandAction(processor, 0, height));
+        } else {
+            // Process the image in row-major tiles, applying every filter to the whole tile
+            for (int y = 0; y < height; y += RasterFilterProcessor.TILE_ROWS) {
+                processTile(processor, y, Math.min(y + RasterFilterProcessor.TILE_ROWS, height));
+            }
+        }
+        BufferedImage filteredImage = processor.getFilteredImage();
+        processor.releaseConvertedImage();
+        logger.debug(FrameBufferPool.IMAGES.getStats());
+        return filteredImage;
+    }
+
+    private void processTile(RasterFilterProcessor processor, int fromRow, int toRow) throws InterruptedException {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Filter task was cancelled.");
+        }
+        int width = processor.getWidth();
+        int height = processor.getHeight();
+        processor.processRows(fromRow, toRow);
+        delayPolicy.afterRows(width, height, toRow - fromRow); // Simulate a delay for the task if the policy asks for it
+        long done = processedPixels.addAndGet((long) (toRow - fromRow) * width);
+        if (progressReporter != null) {
+            // Only a bounded number of progress updates reaches the UI
+            progressReporter.report(done, totalPixels);
+        }
+    }
+
+    private class FilterBandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RasterFilterProcessor processor; // Actions are never serialized
+        private final int fromRow;
+        private final int toRow;
+
+        FilterBandAction(RasterFilterProcessor processor, int fromRow, int toRow) {
+            this.processor = processor;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= RasterFilterProcessor.TILE_ROWS) {
+                try {
+                    processTile(processor, fromRow, toRow);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Filter task was interrupted.");
+                }
+                return;
+            }
+            // Split on a tile boundary so every band but the last one holds whole tiles
+            int tiles = (toRow - fromRow + RasterFilterProcessor.TILE_ROWS - 1) / RasterFilterProcessor.TILE_ROWS;
+            int middleRow = fromRow + (tiles / 2) * RasterFilterProcessor.TILE_ROWS;
+            invokeAll(new FilterBandAction(processor, fromRow, middleRow), new FilterBandAction(processor, middleRow, toRow));
+        }
+    }
+}
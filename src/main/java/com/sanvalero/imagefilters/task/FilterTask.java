@@ -5,49 +5,64 @@ import com.sanvalero.imagefilters.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javafx.concurrent.Task;
 
 public class FilterTask extends Task<BufferedImage> {
     private static final Logger logger = LoggerFactory.getLogger(FilterTask.class);
-    
+
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 4_000_000; // Images with at least this many pixels are split across threads
+
     private BufferedImage prevImage;
     private List<Filter> filters;
+    private long parallelThreshold;
+    private ForkJoinPool forkJoinPool;
+    private DelayPolicy delayPolicy = DelayPolicy.getDefault(); // Artificial delay, none by default
+    private FilterResultCache resultCache; // Null to always filter the whole chain
+    private Object cacheSource;
 
     public FilterTask(BufferedImage prevImage, List<Filter> filters) {
+        this(prevImage, filters, DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public FilterTask(BufferedImage prevImage, List<Filter> filters, long parallelThreshold, ForkJoinPool forkJoinPool) {
         this.prevImage = prevImage;
         this.filters = filters;
+        this.parallelThreshold = parallelThreshold;
+        this.forkJoinPool = forkJoinPool; // Null to use the pool running the task, or the common pool
+    }
+
+    public void setDelayPolicy(DelayPolicy delayPolicy) {
+        this.delayPolicy = delayPolicy;
+    }
+
+    // Reuse the results cached for the same source, which identifies the image whose pixels were copied to prevImage
+    public void setResultCache(FilterResultCache resultCache, Object cacheSource) {
+        this.resultCache = resultCache;
+        this.cacheSource = cacheSource;
     }
 
     @Override
     protected BufferedImage call() throws Exception {
         updateMessage("Starting filter...");
         logger.info("Applying filters to the image...");
-        BufferedImage filteredImage = new BufferedImage(prevImage.getWidth(), prevImage.getHeight(), prevImage.getType());
-        int imageSize = prevImage.getWidth() * prevImage.getHeight();
-        int processedPixels = 0;
-        // Loop through the pixels of the image and apply the filters to each pixel
-        for (int x = 0; x < prevImage.getWidth(); x++) {
-            Thread.sleep(10); // Simulate a delay for the task
-            for (int y = 0; y < prevImage.getHeight(); y++) {
-                Color pixelColor = new Color(prevImage.getRGB(x, y));
-                // Apply each filter to the pixel
-                for (Filter filter : filters) {
-                    pixelColor = filter.apply(pixelColor);
-                }
-                filteredImage.setRGB(x, y, pixelColor.getRGB());
-                processedPixels++;
-                // Update the progress of the task
-                updateProgress(processedPixels, imageSize);
-                // Update the message to show the progress in %
-                updateMessage((processedPixels * 100 / imageSize) + "%");
-            }
-        }
+        // The filtering itself does not depend on JavaFX, the task only publishes its progress and checks cancellation
+        FilterRunner runner = new FilterRunner(prevImage, filters, parallelThreshold, forkJoinPool);
+        runner.setDelayPolicy(delayPolicy);
+        runner.setResultCache(resultCache, cacheSource);
+        runner.setCancelled(this::isCancelled);
+        runner.setProgressReporter(new ProgressReporter((done, total, percent) -> {
+            // Update the progress of the task
+            updateProgress(done, total);
+            // Update the message to show the progress in %
+            updateMessage(percent + "%");
+        }));
+        BufferedImage filteredImage = runner.run();
         // Update the progress of the task
-        updateProgress(processedPixels, imageSize);
+        updateProgress(runner.getProcessedPixels(), (long) prevImage.getWidth() * prevImage.getHeight());
         // Update the message to show that the task is finished
         logger.info("Filters applied successfully.");
         updateMessage("Done!");
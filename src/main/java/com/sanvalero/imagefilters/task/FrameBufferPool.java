@@ -0,0 +1,235 @@
+package com.sanvalero.imagefilters.task;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+public class FrameBufferPool<T> {
+    // This class keeps fixed-size frame buffers (Mats, pixel arrays, images) so they can be reused between frames
+    // Buffers are leased by width, height and type, and given back once the stage that used them is done
+
+    // Maximum memory kept in idle buffers per pool, it can be set with -Dimagefilters.pool.maxIdleMB=<MB>
+    public static final long DEFAULT_MAX_IDLE_BYTES = Long.getLong("imagefilters.pool.maxIdleMB", 256L) * 1024 * 1024;
+
+    public static final FrameBufferPool<byte[]> BYTE_ARRAYS = new FrameBufferPool<>("byte[]",
+            (width, height, type) -> new byte[width * height],
+            array -> new Key(array.length, 1, 0),
+            array -> array.length,
+            array -> { },
+            DEFAULT_MAX_IDLE_BYTES);
+    public static final FrameBufferPool<BufferedImage> IMAGES = new FrameBufferPool<>("BufferedImage",
+            BufferedImage::new,
+            image -> new Key(image.getWidth(), image.getHeight(), image.getType()),
+            FrameBufferPool::getImageBytes,
+            BufferedImage::flush,
+            DEFAULT_MAX_IDLE_BYTES);
+
+    // Bytes of the backing array of an image, INT_RGB pixels use 4 bytes although they only have 24 bits
+    static long getImageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    public interface BufferFactory<T> {
+        T create(int width, int height, int type);
+    }
+
+    public interface KeyFunction<T> {
+        Key keyOf(T buffer);
+    }
+
+    public static class Key {
+        private final int width;
+        private final int height;
+        private final int type;
+
+        public Key(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (width * 31 + height) * 31 + type;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "/" + type;
+        }
+    }
+
+    private final String name;
+    private final BufferFactory<T> factory;
+    private final KeyFunction<T> keyFunction;
+    private final ToLongFunction<T> sizeFunction;
+    private final Consumer<T> disposer;
+    private final long maxIdleBytes;
+    private final Map<Key, Deque<T>> idleBuffers = new ConcurrentHashMap<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public FrameBufferPool(String name, BufferFactory<T> factory, KeyFunction<T> keyFunction, ToLongFunction<T> sizeFunction,
+            Consumer<T> disposer, long maxIdleBytes) {
+        this.name = name;
+        this.factory = factory;
+        this.keyFunction = keyFunction;
+        this.sizeFunction = sizeFunction;
+        this.disposer = disposer;
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    // Get a buffer of the given size and type, reusing an idle one if possible
+    public T lease(int width, int height, int type) {
+        leases.incrementAndGet();
+        Deque<T> buffers = idleBuffers.get(new Key(width, height, type));
+        T buffer = buffers != null ? buffers.pollFirst() : null;
+        if (buffer != null) {
+            idleCount.decrementAndGet();
+            idleBytes.addAndGet(-sizeFunction.applyAsLong(buffer));
+            hits.incrementAndGet();
+            return buffer;
+        }
+        return factory.create(width, height, type);
+    }
+
+    // Give back a buffer that nobody uses anymore; it must not be touched after this call
+    public void release(T buffer) {
+        if (buffer == null) {
+            return;
+        }
+        releases.incrementAndGet();
+        Key key = keyFunction.keyOf(buffer);
+        if (key.width <= 0 || key.height <= 0) {
+            dispose(buffer); // Empty buffers (e.g. a Mat after a failed read) are not worth keeping
+            return;
+        }
+        long size = sizeFunction.applyAsLong(buffer);
+        if (closed || size > maxIdleBytes) {
+            dispose(buffer);
+            return;
+        }
+        // Reserve the bytes before keeping the buffer, so concurrent releases can not go over the limit together;
+        // make room by dropping idle buffers, starting with the sizes that are not this one
+        while (true) {
+            long bytes = idleBytes.get();
+            if (bytes + size <= maxIdleBytes) {
+                if (idleBytes.compareAndSet(bytes, bytes + size)) {
+                    break;
+                }
+            } else if (!evictIdleBuffer(key)) {
+                dispose(buffer);
+                return;
+            }
+        }
+        idleBuffers.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>()).offerFirst(buffer);
+        idleCount.incrementAndGet();
+        if (closed) {
+            clear(); // Closed while the buffer was being kept
+        }
+    }
+
+    // Drop every idle buffer and dispose the ones released from now on, once nobody will lease from the pool again
+    public void close() {
+        closed = true;
+        clear();
+    }
+
+    // Drop every idle buffer, e.g. once a video has been processed
+    public void clear() {
+        for (Deque<T> buffers : idleBuffers.values()) {
+            T buffer;
+            while ((buffer = buffers.pollFirst()) != null) {
+                idleCount.decrementAndGet();
+                idleBytes.addAndGet(-sizeFunction.applyAsLong(buffer));
+                dispose(buffer);
+            }
+        }
+    }
+
+    // Drop the least recently released idle buffer, preferring other sizes than the given one
+    private boolean evictIdleBuffer(Key preservedKey) {
+        Deque<T> candidate = null;
+        for (Map.Entry<Key, Deque<T>> entry : idleBuffers.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                candidate = entry.getValue();
+                if (!entry.getKey().equals(preservedKey)) {
+                    break;
+                }
+            }
+        }
+        T buffer = candidate != null ? candidate.pollLast() : null;
+        if (buffer == null) {
+            return false;
+        }
+        idleCount.decrementAndGet();
+        idleBytes.addAndGet(-sizeFunction.applyAsLong(buffer));
+        dispose(buffer);
+        return true;
+    }
+
+    private void dispose(T buffer) {
+        discarded.incrementAndGet();
+        disposer.accept(buffer);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public long getIdleBytes() {
+        return idleBytes.get();
+    }
+
+    public long getLeaseCount() {
+        return leases.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getReleaseCount() {
+        return releases.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public double getHitRate() {
+        long leaseCount = leases.get();
+        return leaseCount == 0 ? 0 : (double) hits.get() / leaseCount;
+    }
+
+    public String getStats() {
+        return String.format("%s pool: %d leases, %.1f%% hit rate, %d idle (%d KB), %d released, %d discarded",
+                name, getLeaseCount(), getHitRate() * 100, getIdleCount(), getIdleBytes() / 1024, getReleaseCount(), getDiscardedCount());
+    }
+}
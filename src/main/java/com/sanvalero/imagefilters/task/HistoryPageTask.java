@@ -0,0 +1,42 @@
+package com.sanvalero.imagefilters.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sanvalero.imagefilters.report.HistoryCursor;
+import com.sanvalero.imagefilters.report.HistoryPage;
+import com.sanvalero.imagefilters.report.HistoryQuery;
+import com.sanvalero.imagefilters.report.ReportManager;
+
+import javafx.concurrent.Task;
+
+public class HistoryPageTask extends Task<HistoryPage> {
+    // This class is responsible for reading a page of the history report off the FX thread
+    private static final Logger logger = LoggerFactory.getLogger(HistoryPageTask.class);
+
+    private ReportManager reportManager;
+    private HistoryQuery query;
+    private HistoryCursor cursor;
+    private int pageSize;
+
+    public HistoryPageTask(ReportManager reportManager, HistoryQuery query, HistoryCursor cursor, int pageSize) {
+        this.reportManager = reportManager;
+        this.query = query;
+        this.cursor = cursor;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    protected HistoryPage call() throws Exception {
+        logger.debug("Reading a page of " + pageSize + " history entries...");
+        updateMessage("Loading history...");
+        HistoryPage page;
+        if (cursor == null && query.isEmpty()) {
+            page = reportManager.readLastEntries(pageSize); // The newest entries, without reading the index
+        } else {
+            page = reportManager.queryEntries(query, cursor, pageSize);
+        }
+        updateMessage(page.hasMore() ? "Scroll down to load more entries" : "All entries loaded");
+        return page;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sanvalero.imagefilters.task;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterChain;
+
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+public class MatFilterProcessor {
+    // This class is responsible for applying a filter chain to OpenCV frames without going through BufferedImage
+    // The pixels are copied once out of the Mat into a pooled buffer, filtered there and copied once back
+    private final List<Filter> filters;
+    private final ThreadLocal<int[]> grayBuffers = new ThreadLocal<>();
+
+    public MatFilterProcessor(List<Filter> filters) {
+        this.filters = FilterChain.compile(filters); // Fuse consecutive point filters into lookup tables
+    }
+
+    // Apply the filter chain in place to a CV_8UC3 (BGR) or CV_8UC1 (gray) frame
+    public void process(Mat mat) {
+        int pixelCount = mat.rows() * mat.cols();
+        if (mat.type() == CvType.CV_8UC3) {
+            byte[] pixels = FrameBufferPool.BYTE_ARRAYS.lease(pixelCount * 3, 1, 0);
+            try {
+                mat.get(0, 0, pixels);
+                for (Filter filter : filters) {
+                    filter.apply(pixels, 0, pixelCount);
+                }
+                mat.put(0, 0, pixels);
+            } finally {
+                FrameBufferPool.BYTE_ARRAYS.release(pixels);
+            }
+        } else if (mat.type() == CvType.CV_8UC1) {
+            byte[] grayPixels = FrameBufferPool.BYTE_ARRAYS.lease(pixelCount, 1, 0);
+            try {
+                mat.get(0, 0, grayPixels);
+                int[] pixels = grayBuffer(pixelCount);
+                // Converted like a TYPE_BYTE_GRAY image, so a frame gives the same result as the image path
+                for (int i = 0; i < pixelCount; i++) {
+                    pixels[i] = RasterFilterProcessor.fromGray(grayPixels[i]);
+                }
+                for (Filter filter : filters) {
+                    filter.apply(pixels, 0, pixelCount);
+                }
+                for (int i = 0; i < pixelCount; i++) {
+                    grayPixels[i] = RasterFilterProcessor.toGray(pixels[i]);
+                }
+                mat.put(0, 0, grayPixels);
+            } finally {
+                FrameBufferPool.BYTE_ARRAYS.release(grayPixels);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported frame type: " + CvType.typeToString(mat.type()));
+        }
+    }
+
+    // Gray frames also need packed pixels; they are kept per thread while the frame size does not change
+    private int[] grayBuffer(int length) {
+        int[] buffer = grayBuffers.get();
+        if (buffer == null || buffer.length != length) {
+            buffer = new int[length];
+            grayBuffers.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sanvalero.imagefilters.task;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+public class PreviewProxy {
+    // This class builds the small copy of an image that the filters are applied to while previewing
+    // Every pixel of the proxy is the average of the box of pixels of the original it covers; the original is read a
+    // band of rows at a time, so no full-size copy of it is made
+    // The longest side of the proxy can be set with -Dimagefilters.preview.maxSize=<pixels>
+    public static final int DEFAULT_MAX_SIZE = Integer.getInteger("imagefilters.preview.maxSize", 1280);
+
+    private PreviewProxy() {
+    }
+
+    // True if the image is bigger than a proxy, so previewing it is faster than filtering it
+    public static boolean isWorthPreviewing(Image image, int maxSize) {
+        return image.getWidth() > maxSize || image.getHeight() > maxSize;
+    }
+
+    public static BufferedImage create(Image source, int maxSize) {
+        int width = (int) source.getWidth();
+        int height = (int) source.getHeight();
+        double scale = Math.min(1.0, (double) maxSize / Math.max(width, height));
+        int proxyWidth = Math.max(1, (int) Math.round(width * scale));
+        int proxyHeight = Math.max(1, (int) Math.round(height * scale));
+        BufferedImage proxy = new BufferedImage(proxyWidth, proxyHeight, BufferedImage.TYPE_INT_ARGB);
+        int[] target = ((DataBufferInt) proxy.getRaster().getDataBuffer()).getData();
+        PixelReader reader = source.getPixelReader();
+        // First source column of every proxy column, the last entry is the width
+        int[] columnStart = new int[proxyWidth + 1];
+        for (int x = 0; x <= proxyWidth; x++) {
+            columnStart[x] = (int) ((long) x * width / proxyWidth);
+        }
+        long[] sums = new long[proxyWidth * 4];
+        int[] band = new int[0];
+        for (int y = 0; y < proxyHeight; y++) {
+            int fromRow = (int) ((long) y * height / proxyHeight);
+            int toRow = Math.max(fromRow + 1, (int) ((long) (y + 1) * height / proxyHeight));
+            int rows = toRow - fromRow;
+            if (band.length < rows * width) {
+                band = new int[rows * width];
+            }
+            reader.getPixels(0, fromRow, width, rows, PixelFormat.getIntArgbInstance(), band, 0, width);
+            Arrays.fill(sums, 0);
+            for (int row = 0; row < rows; row++) {
+                int offset = row * width;
+                for (int x = 0; x < proxyWidth; x++) {
+                    int end = offset + Math.max(columnStart[x] + 1, columnStart[x + 1]);
+                    long a = 0;
+                    long r = 0;
+                    long g = 0;
+                    long b = 0;
+                    for (int i = offset + columnStart[x]; i < end; i++) {
+                        int pixel = band[i];
+                        a += pixel >>> 24;
+                        r += (pixel >> 16) & 0xFF;
+                        g += (pixel >> 8) & 0xFF;
+                        b += pixel & 0xFF;
+                    }
+                    sums[x * 4] += a;
+                    sums[x * 4 + 1] += r;
+                    sums[x * 4 + 2] += g;
+                    sums[x * 4 + 3] += b;
+                }
+            }
+            for (int x = 0; x < proxyWidth; x++) {
+                long count = (long) rows * Math.max(1, columnStart[x + 1] - columnStart[x]);
+                long half = count / 2;
+                int a = (int) ((sums[x * 4] + half) / count);
+                int r = (int) ((sums[x * 4 + 1] + half) / count);
+                int g = (int) ((sums[x * 4 + 2] + half) / count);
+                int b = (int) ((sums[x * 4 + 3] + half) / count);
+                target[y * proxyWidth + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return proxy;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sanvalero.imagefilters.task;
+
+public class ProgressReporter {
+    // This class is responsible for limiting how often the progress of a task is published to the UI
+    // Progress is published when it advances by a percentage step or when the interval has elapsed, whatever comes first
+    // Defaults can be set with -Dimagefilters.progress.step=<percent> and -Dimagefilters.progress.intervalMs=<ms>
+    private static volatile int defaultPercentStep = Integer.getInteger("imagefilters.progress.step", 1);
+    private static volatile long defaultIntervalMillis = Long.getLong("imagefilters.progress.intervalMs", 100L);
+
+    public interface ProgressListener {
+        void onProgress(long done, long total, int percent);
+    }
+
+    private final ProgressListener listener;
+    private final int percentStep;
+    private final long intervalNanos;
+    private volatile int lastPercent = -1;
+    private volatile long lastDone = -1;
+    private volatile long lastPublishNanos = System.nanoTime();
+
+    public ProgressReporter(ProgressListener listener) {
+        this(listener, defaultPercentStep, defaultIntervalMillis);
+    }
+
+    public ProgressReporter(ProgressListener listener, int percentStep, long intervalMillis) {
+        this.listener = listener;
+        this.percentStep = Math.max(1, percentStep);
+        this.intervalNanos = Math.max(0, intervalMillis) * 1_000_000L;
+    }
+
+    public static int getDefaultPercentStep() {
+        return defaultPercentStep;
+    }
+
+    public static void setDefaultPercentStep(int percentStep) {
+        defaultPercentStep = percentStep;
+    }
+
+    public static long getDefaultIntervalMillis() {
+        return defaultIntervalMillis;
+    }
+
+    public static void setDefaultIntervalMillis(long intervalMillis) {
+        defaultIntervalMillis = intervalMillis;
+    }
+
+    // Report the current progress; it can be called from several threads and as often as needed
+    public void report(long done, long total) {
+        int percent = total > 0 ? (int) (done * 100 / total) : 0;
+        boolean finished = done >= total;
+        // Cheap check without locking, most calls end here
+        if (!finished && percent < lastPercent + percentStep && System.nanoTime() - lastPublishNanos < intervalNanos) {
+            return;
+        }
+        synchronized (this) {
+            // Avoid going backwards when several threads report at the same time
+            if (done <= lastDone) {
+                return;
+            }
+            lastDone = done;
+            lastPercent = percent;
+            lastPublishNanos = System.nanoTime();
+            listener.onProgress(done, total, percent);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.sanvalero.imagefilters.task;
+
+import com.sanvalero.imagefilters.filter.Filter;
+import com.sanvalero.imagefilters.filter.FilterChain;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.List;
+
+public class RasterFilterProcessor {
+    // This class is responsible for applying a filter chain directly on the backing arrays of an image
+    // Rows are processed in row-major tiles; disjoint row ranges can be processed from different threads
+    public static final int TILE_ROWS = 64; // Default number of rows processed per tile
+
+    // Gray images are stored in a linear gray color space; these tables reproduce the conversion done by getRGB/setRGB
+    private static final int[] GRAY_TO_RGB = new int[256];
+    private static final int[] SRGB_TO_LINEAR16 = new int[256]; // Same table and weights as the gray ColorModel
+
+    // Pixels of the gray tiles, expanded to packed ARGB while the filters are applied
+    private static final ThreadLocal<int[]> GRAY_SCRATCH = ThreadLocal.withInitial(() -> new int[0]);
+
+    static {
+        BufferedImage grayImage = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        for (int i = 0; i < 256; i++) {
+            grayImage.getRaster().setSample(i, 0, 0, i);
+            GRAY_TO_RGB[i] = grayImage.getRGB(i, 0) & 0xFF;
+        }
+        // Algorithm from IEC 61966-2-1, as in ColorModel
+        for (int i = 0; i < 256; i++) {
+            float input = i / 255.0f;
+            float output = input <= 0.04045f ? input / 12.92f : (float) Math.pow((input + 0.055f) / 1.055f, 2.4);
+            SRGB_TO_LINEAR16[i] = Math.round(output * 65535.0f);
+        }
+    }
+
+    private final BufferedImage originalImage;
+    private final BufferedImage sourceImage;
+    private final BufferedImage filteredImage;
+    private final List<Filter> filters;
+    private final int width;
+    private final int height;
+
+    public RasterFilterProcessor(BufferedImage image, List<Filter> filters) {
+        this.originalImage = image;
+        this.sourceImage = toSupportedImage(image);
+        this.filters = FilterChain.compile(filters); // Fuse consecutive point filters into lookup tables
+        this.width = sourceImage.getWidth();
+        this.height = sourceImage.getHeight();
+        // Every row of the leased image is overwritten, so its previous content does not matter
+        this.filteredImage = FrameBufferPool.IMAGES.lease(width, height, sourceImage.getType());
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public BufferedImage getFilteredImage() {
+        return filteredImage;
+    }
+
+    // Give back the converted copy of the original image, if one was needed
+    public void releaseConvertedImage() {
+        if (sourceImage != originalImage) {
+            FrameBufferPool.IMAGES.release(sourceImage);
+        }
+    }
+
+    // Apply the filter chain to the rows [fromRow, toRow) and store them in the filtered image
+    public void processRows(int fromRow, int toRow) {
+        int offset = fromRow * width;
+        int length = (toRow - fromRow) * width;
+        switch (sourceImage.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] source = intData(sourceImage);
+                int[] target = intData(filteredImage);
+                System.arraycopy(source, offset, target, offset, length);
+                for (Filter filter : filters) {
+                    filter.apply(target, offset, length);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] source = intData(sourceImage);
+                int[] target = intData(filteredImage);
+                // The filters see opaque pixels, as they get them from getRGB, and the unused byte is cleared again
+                for (int i = offset; i < offset + length; i++) {
+                    target[i] = source[i] | 0xFF000000;
+                }
+                for (Filter filter : filters) {
+                    filter.apply(target, offset, length);
+                }
+                for (int i = offset; i < offset + length; i++) {
+                    target[i] &= 0x00FFFFFF;
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] source = byteData(sourceImage);
+                byte[] target = byteData(filteredImage);
+                System.arraycopy(source, offset * 3, target, offset * 3, length * 3);
+                for (Filter filter : filters) {
+                    filter.apply(target, offset * 3, length);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_BYTE_GRAY: {
+                byte[] source = byteData(sourceImage);
+                byte[] target = byteData(filteredImage);
+                // Expand the gray tile to packed pixels, filter it and store the luminance back
+                int[] pixels = GRAY_SCRATCH.get();
+                if (pixels.length < length) {
+                    pixels = new int[length];
+                    GRAY_SCRATCH.set(pixels);
+                }
+                for (int i = 0; i < length; i++) {
+                    pixels[i] = fromGray(source[offset + i]);
+                }
+                for (Filter filter : filters) {
+                    filter.apply(pixels, 0, length);
+                }
+                for (int i = 0; i < length; i++) {
+                    target[offset + i] = toGray(pixels[i]);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unsupported image type: " + sourceImage.getType());
+        }
+    }
+
+    // Same pixel getRGB returns for a gray sample; also used for the gray video frames, so both paths match
+    static int fromGray(byte sample) {
+        int gray = GRAY_TO_RGB[sample & 0xFF];
+        return 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+    }
+
+    // Same value setRGB stores in a gray image
+    static byte toGray(int pixel) {
+        float gray = ((0.2125f * SRGB_TO_LINEAR16[(pixel >> 16) & 0xFF])
+                + (0.7154f * SRGB_TO_LINEAR16[(pixel >> 8) & 0xFF])
+                + (0.0721f * SRGB_TO_LINEAR16[pixel & 0xFF])) / 65535.0f;
+        return (byte) (int) (gray * 255 + 0.5f);
+    }
+
+    // Convert the image once to a layout that can be processed directly, if it is not already
+    public static BufferedImage toSupportedImage(BufferedImage image) {
+        if (isSupported(image)) {
+            return image;
+        }
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage converted = FrameBufferPool.IMAGES.lease(image.getWidth(), image.getHeight(), type);
+        Graphics2D graphics = converted.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Src); // Replace the content of the leased image, alpha included
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return converted;
+    }
+
+    public static boolean isSupported(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        // Sub-images share a bigger backing array, so they cannot be accessed as a contiguous block
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getDataBuffer().getNumBanks() != 1 || raster.getDataBuffer().getOffset() != 0) {
+            return false;
+        }
+        SampleModel sampleModel = raster.getSampleModel();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+                return sampleModel instanceof SinglePixelPackedSampleModel
+                        && ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == image.getWidth();
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return sampleModel instanceof ComponentSampleModel
+                        && ((ComponentSampleModel) sampleModel).getPixelStride() == 3
+                        && ((ComponentSampleModel) sampleModel).getScanlineStride() == image.getWidth() * 3
+                        && Arrays.equals(((ComponentSampleModel) sampleModel).getBandOffsets(), new int[] {2, 1, 0});
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return sampleModel instanceof ComponentSampleModel
+                        && ((ComponentSampleModel) sampleModel).getPixelStride() == 1
+                        && ((ComponentSampleModel) sampleModel).getScanlineStride() == image.getWidth();
+            default:
+                return false;
+        }
+    }
+
+    private static int[] intData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static byte[] byteData(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,131 @@
+package com.sanvalero.imagefilters.filter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class FilterChainTest {
+    // A compiled chain must give exactly the pixels of its filters applied one by one, for every color
+
+    @Test
+    public void fusesLookupTableMatrixLookupTable() {
+        List<Filter> chain = List.of(new BrightnessFilter(40), new GrayscaleFilter(), new InvertColorsFilter());
+        List<Filter> compiled = FilterChain.compile(chain);
+        assertEquals(1, compiled.size());
+        assertTrue(compiled.get(0) instanceof FusedPointFilter);
+        assertSameResult(chain, compiled);
+    }
+
+    @Test
+    public void fusesNonGrayMatrix() {
+        List<Filter> chain = List.of(new BrightnessFilter(-25), new SepiaFilter(), new BrightnessFilter(10));
+        List<Filter> compiled = FilterChain.compile(chain);
+        assertEquals(1, compiled.size());
+        assertSameResult(chain, compiled);
+    }
+
+    @Test
+    public void secondMatrixStartsNewSegment() {
+        List<Filter> chain = List.of(new InvertColorsFilter(), new SepiaFilter(), new BrightnessFilter(30),
+                new GrayscaleFilter(), new BrightnessFilter(-60));
+        List<Filter> compiled = FilterChain.compile(chain);
+        assertEquals(2, compiled.size());
+        assertSameResult(chain, compiled);
+    }
+
+    @Test
+    public void otherFiltersBreakSegments() {
+        Filter swapChannels = new SwapChannelsFilter();
+        List<Filter> chain = List.of(new BrightnessFilter(20), new InvertColorsFilter(), swapChannels,
+                new GrayscaleFilter(), new BrightnessFilter(5));
+        List<Filter> compiled = FilterChain.compile(chain);
+        assertEquals(3, compiled.size());
+        assertSame(swapChannels, compiled.get(1));
+        assertSameResult(chain, compiled);
+    }
+
+    @Test
+    public void singlePointFilterIsNotWrapped() {
+        Filter brightness = new BrightnessFilter(15);
+        List<Filter> compiled = FilterChain.compile(List.of(brightness));
+        assertEquals(1, compiled.size());
+        assertSame(brightness, compiled.get(0));
+    }
+
+    // Every RGB color, with a different alpha for every red and green pair
+    private static void assertSameResult(List<Filter> chain, List<Filter> compiled) {
+        int[] expected = new int[256 * 256];
+        int[] actual = new int[256 * 256];
+        byte[] expectedBgr = new byte[256 * 256 * 3];
+        byte[] actualBgr = new byte[256 * 256 * 3];
+        for (int red = 0; red < 256; red++) {
+            for (int i = 0; i < 256 * 256; i++) {
+                int alpha = (red * 7 + (i >> 8)) & 0xFF;
+                int pixel = (alpha << 24) | (red << 16) | i;
+                expected[i] = pixel;
+                actual[i] = pixel;
+                expectedBgr[i * 3] = (byte) i;
+                expectedBgr[i * 3 + 1] = (byte) (i >> 8);
+                expectedBgr[i * 3 + 2] = (byte) red;
+            }
+            System.arraycopy(expectedBgr, 0, actualBgr, 0, expectedBgr.length);
+            for (Filter filter : chain) {
+                filter.apply(expected, 0, expected.length);
+                filter.apply(expectedBgr, 0, expected.length);
+            }
+            for (Filter filter : compiled) {
+                filter.apply(actual, 0, actual.length);
+                filter.apply(actualBgr, 0, actual.length);
+            }
+            assertArrayEquals(expected, actual, "ARGB pixels with red " + red);
+            assertArrayEquals(expectedBgr, actualBgr, "BGR pixels with red " + red);
+        }
+    }
+
+    // Color matrix that mixes the channels differently, so the fused filter can not compute a single value
+    private static class SepiaFilter extends Filter {
+        private static final double[][] MATRIX = {
+                {0.393, 0.769, 0.189},
+                {0.349, 0.686, 0.168},
+                {0.272, 0.534, 0.131}
+        };
+
+        SepiaFilter() {
+            super("Sepia");
+        }
+
+        @Override
+        public Color apply(Color color) {
+            return new Color(mix(0, color.getRed(), color.getGreen(), color.getBlue()),
+                    mix(1, color.getRed(), color.getGreen(), color.getBlue()),
+                    mix(2, color.getRed(), color.getGreen(), color.getBlue()));
+        }
+
+        @Override
+        public PointOperation getPointOperation() {
+            return PointOperation.colorMatrix(MATRIX);
+        }
+
+        private static int mix(int row, int red, int green, int blue) {
+            return clamp((int) (MATRIX[row][0] * red + MATRIX[row][1] * green + MATRIX[row][2] * blue));
+        }
+    }
+
+    // Not a point operation, it can not be fused
+    private static class SwapChannelsFilter extends Filter {
+        SwapChannelsFilter() {
+            super("Swap channels");
+        }
+
+        @Override
+        public Color apply(Color color) {
+            return new Color(color.getBlue(), color.getRed(), color.getGreen());
+        }
+    }
+}
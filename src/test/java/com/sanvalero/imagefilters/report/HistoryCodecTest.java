@@ -0,0 +1,125 @@
+package com.sanvalero.imagefilters.report;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.sanvalero.imagefilters.filter.FilterDescriptor;
+import com.sanvalero.imagefilters.filter.FilterDescriptor.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HistoryCodecTest {
+    // Entries written by a codec must be read back the same, forward and backward
+
+    static List<HistoryEntry> sampleEntries() {
+        return List.of(
+                new HistoryEntry("2024-05-06T07:08:09.123456789", "/photos/a.jpg",
+                        List.of(new FilterDescriptor(Type.GRAYSCALE, null), new FilterDescriptor(Type.BRIGHTNESS, null, 20))),
+                new HistoryEntry("1965-01-02T03:04:05", "/photos/a.jpg", // Before 1970, negative seconds
+                        List.of(new FilterDescriptor(Type.BRIGHTNESS, null, -255))),
+                new HistoryEntry("2023-10-01T12:00:00", "C:\\fotos\\ñandú|copia.png", // Not in the form toString writes
+                        List.of(new FilterDescriptor(Type.INVERT_COLORS, null))),
+                new HistoryEntry("yesterday", "/photos/b.png", List.of()),
+                new HistoryEntry("2024-05-06T07:08:10", "/photos/c.png",
+                        List.of(new FilterDescriptor(Type.OTHER, "Sepia", 1, Integer.MIN_VALUE, Integer.MAX_VALUE),
+                                new FilterDescriptor(Type.OTHER, "Blur", 3))));
+    }
+
+    static void assertSameEntry(HistoryEntry expected, HistoryEntry actual) {
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getPath(), actual.getPath());
+        assertEquals(expected.getFilterDescriptors(), actual.getFilterDescriptors());
+    }
+
+    @Test
+    public void textRoundTrip() throws IOException {
+        assertRoundTrip(new TextHistoryCodec(), sampleEntries());
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        assertRoundTrip(new BinaryHistoryCodec(), sampleEntries());
+    }
+
+    @Test
+    public void legacyLinesWithoutParameters() throws IOException {
+        byte[] lines = ("2023-10-01T12:00:00|/photos/old.jpg|Grayscale, Brightness, Invert Colors\r\n"
+                + "2023-10-01T12:00:01|/photos/none.jpg|-\n").getBytes(StandardCharsets.UTF_8);
+        List<HistoryEntry> entries = decodeAll(new TextHistoryCodec(), lines, null);
+        assertEquals(2, entries.size());
+        HistoryEntry legacy = entries.get(0);
+        assertEquals("2023-10-01T12:00:00", legacy.getTimestamp());
+        assertEquals("/photos/old.jpg", legacy.getPath());
+        assertEquals(List.of(new FilterDescriptor(Type.GRAYSCALE, null), new FilterDescriptor(Type.BRIGHTNESS, null),
+                new FilterDescriptor(Type.INVERT_COLORS, null)), legacy.getFilterDescriptors());
+        assertEquals("Grayscale, Brightness, Invert Colors", legacy.getFilters());
+        assertEquals(List.of(), entries.get(1).getFilterDescriptors());
+        // A legacy Brightness keeps having no parameters once it is binary
+        assertRoundTrip(new BinaryHistoryCodec(), entries);
+    }
+
+    @Test
+    public void binaryRecordCutByCrash() throws IOException {
+        BinaryHistoryCodec codec = new BinaryHistoryCodec();
+        PathDictionary dictionary = new PathDictionary();
+        byte[] record = codec.encode(sampleEntries().get(0), dictionary);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        assertEquals(record.length, codec.recordLength(buffer, 0, record.length));
+        assertEquals(-1, codec.recordLength(buffer, 0, record.length - 1));
+        assertThrows(IOException.class, () -> codec.decode(record, 0, record.length - 1, dictionary));
+    }
+
+    @Test
+    public void binaryUnknownPath() {
+        BinaryHistoryCodec codec = new BinaryHistoryCodec();
+        byte[] record = codec.encode(sampleEntries().get(0), new PathDictionary());
+        assertThrows(IOException.class, () -> codec.decode(record, 0, record.length, new PathDictionary()));
+    }
+
+    private static void assertRoundTrip(HistoryCodec codec, List<HistoryEntry> entries) throws IOException {
+        PathDictionary dictionary = new PathDictionary();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ByteArrayOutputStream dictionaryFile = new ByteArrayOutputStream();
+        for (HistoryEntry entry : entries) {
+            log.write(codec.encode(entry, dictionary));
+            dictionaryFile.write(dictionary.takeUnsavedPaths());
+        }
+        // Read with the dictionary saved in the file, as after opening the history again
+        PathDictionary savedDictionary = codec.usesDictionary() ? PathDictionary.read(dictionaryFile.toByteArray()) : null;
+        byte[] bytes = log.toByteArray();
+        List<HistoryEntry> decoded = decodeAll(codec, bytes, savedDictionary);
+        assertEquals(entries.size(), decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertSameEntry(entries.get(i), decoded.get(i));
+        }
+        // Backward, as the newest entries are read
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int end = bytes.length;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            int start = Math.max(0, codec.recordStart(buffer, end));
+            assertSameEntry(entries.get(i), codec.decode(bytes, start, end - start, savedDictionary));
+            end = start;
+        }
+        assertEquals(0, end);
+    }
+
+    private static List<HistoryEntry> decodeAll(HistoryCodec codec, byte[] bytes, PathDictionary dictionary) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int position = 0;
+        while (position < bytes.length) {
+            int length = codec.recordLength(buffer, position, bytes.length);
+            assertEquals(true, length > 0, "Whole record at " + position);
+            entries.add(codec.decode(bytes, position, length, dictionary));
+            position += length;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,71 @@
+package com.sanvalero.imagefilters.report;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HistoryConverterTest {
+    // A history converted to the other format must hold the same entries
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void textToBinaryKeepsEntries() throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>(HistoryCodecTest.sampleEntries());
+        entries.add(HistoryEntry.parse("2023-10-01T12:00:00|/photos/old.jpg|Grayscale, Brightness")); // Legacy line
+        File text = directory.resolve("history_report.log").toFile();
+        TextHistoryCodec textCodec = new TextHistoryCodec();
+        try (FileOutputStream output = new FileOutputStream(text)) {
+            for (HistoryEntry entry : entries) {
+                output.write(textCodec.encode(entry, null));
+            }
+        }
+        File binary = directory.resolve("history_report.bin").toFile();
+        assertEquals(entries.size(), HistoryConverter.convert(text, binary));
+        PathDictionary dictionary = PathDictionary.read(Files.readAllBytes(directory.resolve("history_report.dict")));
+        assertEquals(5, dictionary.size()); // Repeated paths are saved once
+        List<HistoryEntry> converted = read(binary, new BinaryHistoryCodec(), dictionary);
+        assertEquals(entries.size(), converted.size());
+        for (int i = 0; i < entries.size(); i++) {
+            HistoryCodecTest.assertSameEntry(entries.get(i), converted.get(i));
+        }
+        // And back to text, line for line
+        File back = directory.resolve("back.log").toFile();
+        assertEquals(entries.size(), HistoryConverter.convert(binary, back));
+        assertArrayEquals(Files.readAllBytes(text.toPath()), Files.readAllBytes(back.toPath()));
+    }
+
+    @Test
+    public void lastLineWithoutSeparatorIsConverted() throws IOException {
+        File text = directory.resolve("history_report.log").toFile();
+        Files.writeString(text.toPath(), "2024-01-01T10:00|/a.png|Invert Colors" + System.lineSeparator()
+                + "2024-01-01T10:01|/b.png|Brightness(-10)");
+        File binary = directory.resolve("history_report.bin").toFile();
+        assertEquals(2, HistoryConverter.convert(text, binary));
+        PathDictionary dictionary = PathDictionary.read(Files.readAllBytes(directory.resolve("history_report.dict")));
+        List<HistoryEntry> converted = read(binary, new BinaryHistoryCodec(), dictionary);
+        assertEquals("2024-01-01T10:01|/b.png|Brightness(-10)", converted.get(1).toLine());
+    }
+
+    private static List<HistoryEntry> read(File log, HistoryCodec codec, PathDictionary dictionary) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            long end = HistoryStore.scanRecords(channel, 0, channel.size(), codec, dictionary, (position, entry) -> entries.add(entry));
+            assertEquals(channel.size(), end);
+        }
+        return entries;
+    }
+}